@@ -0,0 +1,41 @@
+package com.tsd.idea_cipher.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ruleaza benchmark-urile de doua ori: Throughput in secunde (MB/s, blocuri/s) si AverageTime in nanosecunde
+ * (ns/bloc), ambele cu profiler-ul GC pentru rata de alocare.
+ *
+ * Argumentele sunt cele ale JMH (ex: "IdeaCipher -p size=1048576"); daca e dat -bm sau -tu, ruleaza o singura data.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (!cmd.getBenchModes().isEmpty() || cmd.getTimeUnit().hasValue()) {
+            new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+            return;
+        }
+        Options throughput = new OptionsBuilder()
+                .parent(cmd)
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .addProfiler(GCProfiler.class)
+                .build();
+        Options averageTime = new OptionsBuilder()
+                .parent(cmd)
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(throughput).run();
+        new Runner(averageTime).run();
+    }
+}
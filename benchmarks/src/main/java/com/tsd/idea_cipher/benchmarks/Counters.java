@@ -0,0 +1,28 @@
+package com.tsd.idea_cipher.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Contoare secundare pentru benchmark-uri.
+ *
+ * In modul Throughput (s) sunt raportate ca blocuri/s si MB/s, iar in modul AverageTime (ns) ca ns/bloc si ns/MB.
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class Counters {
+
+    private static final int BLOCK_SIZE = 8;
+
+    public long blocks;
+    public double megabytes;
+
+    /**
+     * Inregistreaza un numar de octeti procesati.
+     */
+    public void add(long bytes) {
+        blocks += (bytes + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        megabytes += bytes / 1e6;
+    }
+}
@@ -0,0 +1,137 @@
+package com.tsd.idea_cipher.crypto;
+
+import com.tsd.idea_cipher.benchmarks.Counters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Benchmark pentru IdeaCipher: criptarea unui bloc, a unui buffer si generarea subcheilor.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdeaCipherBenchmark {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+    private static final MethodHandle GENERATE_SUBKEYS = privateMethod("generateSubkeys", byte[].class);
+    private static final MethodHandle INVERT_SUBKEY = privateMethod("invertSubkey", int[].class);
+
+    @Param({"true", "false"})
+    private boolean encrypt;
+
+    @Param({"8", "4096", "1048576"})
+    private int size;
+
+    private IdeaCipher idea;
+    private byte[] block;
+    private byte[] data;
+    private ByteBuffer direct;
+    private byte[] userKey;
+    private int[] subkey;
+    private KeyScheduleCache cache;
+
+    @Setup
+    public void setup() throws Throwable {
+        idea = new IdeaCipher(KEY, encrypt);
+        block = new byte[8];
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+        direct = ByteBuffer.allocateDirect(size);
+        direct.put(data).flip();
+        userKey = CrytoUtils.makeKey(KEY, 16);
+        subkey = (int[]) GENERATE_SUBKEYS.invokeExact(userKey);
+        cache = new KeyScheduleCache(16);
+    }
+
+    /**
+     * Un singur bloc de 64 de biti.
+     */
+    @Benchmark
+    public byte[] cryptBlock(Counters counters) {
+        idea.crypt(block, 0);
+        counters.add(8);
+        return block;
+    }
+
+    /**
+     * Un buffer de dimensiunea size, bloc cu bloc.
+     */
+    @Benchmark
+    public byte[] cryptBuffer(Counters counters) {
+        for (int pos = 0; pos < size; pos += 8) {
+            idea.crypt(data, pos);
+        }
+        counters.add(size);
+        return data;
+    }
+
+    /**
+     * Acelasi buffer, cu nucleul care intretese 4 blocuri.
+     */
+    @Benchmark
+    public byte[] cryptBulk(Counters counters) {
+        idea.crypt(data, 0, size);
+        counters.add(size);
+        return data;
+    }
+
+    /**
+     * Acelasi buffer, in memorie directa (off-heap).
+     */
+    @Benchmark
+    public ByteBuffer cryptDirect(Counters counters) {
+        direct.clear();
+        idea.crypt(direct);
+        counters.add(size);
+        return direct;
+    }
+
+    @Benchmark
+    public int[] generateSubkeys() throws Throwable {
+        return (int[]) GENERATE_SUBKEYS.invokeExact(userKey);
+    }
+
+    @Benchmark
+    public int[] invertSubkey() throws Throwable {
+        return (int[]) INVERT_SUBKEY.invokeExact(subkey);
+    }
+
+    /**
+     * Constructorul complet (makeKey + generateSubkeys + invertSubkey la decriptare).
+     */
+    @Benchmark
+    public IdeaCipher newCipher() {
+        return new IdeaCipher(KEY, encrypt);
+    }
+
+    /**
+     * Constructorul, cu subcheile din cache.
+     */
+    @Benchmark
+    public IdeaCipher newCipherCached() {
+        return new IdeaCipher(KEY, encrypt, cache);
+    }
+
+    private static MethodHandle privateMethod(String name, Class<?> param) {
+        try {
+            Method method = IdeaCipher.class.getDeclaredMethod(name, param);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
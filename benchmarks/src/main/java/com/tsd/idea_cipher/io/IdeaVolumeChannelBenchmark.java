@@ -0,0 +1,81 @@
+package com.tsd.idea_cipher.io;
+
+import com.tsd.idea_cipher.benchmarks.Counters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Citiri si scrieri de 4KB la pozitii aleatoare intr-un volum criptat; timpul nu trebuie sa depinda de dimensiunea
+ * volumului.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdeaVolumeChannelBenchmark {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Param({"1048576", "67108864", "1073741824"})
+    private long size;
+
+    @Param({"4096"})
+    private int length;
+
+    private Path dir;
+    private IdeaVolumeChannel volume;
+    private ByteBuffer buf;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("idea-bench");
+        volume = IdeaVolumeChannel.open(dir.resolve("volume.bin"), KEY);
+        random = new Random(42);
+        byte[] chunk = new byte[0x100000];
+        for (long written = 0; written < size; written += chunk.length) {
+            random.nextBytes(chunk);
+            volume.write(ByteBuffer.wrap(chunk, 0, (int) Math.min(chunk.length, size - written)));
+        }
+        buf = ByteBuffer.allocate(length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        volume.close();
+        Files.deleteIfExists(dir.resolve("volume.bin"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public ByteBuffer randomRead(Counters counters) throws IOException {
+        buf.clear();
+        volume.position((long) (random.nextDouble() * (size - length)));
+        volume.read(buf);
+        counters.add(length);
+        return buf;
+    }
+
+    @Benchmark
+    public ByteBuffer randomWrite(Counters counters) throws IOException {
+        buf.clear();
+        volume.position((long) (random.nextDouble() * (size - length)));
+        volume.write(buf);
+        counters.add(length);
+        return buf;
+    }
+}
@@ -0,0 +1,94 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.benchmarks.Counters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Benchmark end-to-end pentru FileProcessor.processData: citire, criptare si scriere, pe fisiere intre 8B si 1GB.
+ *
+ * engine: heap (read / write prin buffer), mapped (memorie mapata, criptata pe loc in maparea de iesire) sau
+ * overlapped (citire / scriere pe fire separate).
+ * Fisierele mari dureaza; pentru o rulare scurta: -p size=8,1048576
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileCipherBenchmark {
+
+    @Param({"ECB", "CBC", "CFB", "OFB", "CTR", "CTR_PMAC"})
+    private OperationMode.Mode mode;
+
+    @Param({"true", "false"})
+    private boolean encrypt;
+
+    @Param({"8", "4096", "1048576", "67108864", "1073741824"})
+    private long size;
+
+    @Param({"heap", "mapped", "overlapped"})
+    private String engine;
+
+    private Path dir;
+    private Path input;
+    private Path output;
+    private FileProcessor processor;
+    private OperationMode opMod;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("idea-bench");
+        input = dir.resolve("input.bin");
+        output = dir.resolve("output.bin");
+        writeRandomFile(input, size);
+        processor = new FileProcessor(input.toString(), output.toString(), OperationModeBenchmark.KEY, encrypt, mode);
+        processor.setMapThreshold(engine.equals("mapped") ? 0 : Long.MAX_VALUE);
+        processor.setOverlapIo(engine.equals("overlapped"));
+        opMod = OperationModeBenchmark.newMode(mode, encrypt);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void processData(Counters counters) throws IOException {
+        long outSize = (size + 7) / 8 * 8;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            processor.processData(in, size, out, outSize, opMod);
+        }
+        counters.add(size);
+    }
+
+    private static void writeRandomFile(Path file, long size) throws IOException {
+        Random random = new Random(42);
+        byte[] chunk = new byte[0x100000];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+}
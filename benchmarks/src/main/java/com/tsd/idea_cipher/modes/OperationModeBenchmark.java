@@ -0,0 +1,81 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.benchmarks.Counters;
+import com.tsd.idea_cipher.modes.algorithms.CBC;
+import com.tsd.idea_cipher.modes.algorithms.CFB;
+import com.tsd.idea_cipher.modes.algorithms.CTR;
+import com.tsd.idea_cipher.modes.algorithms.CTRPMAC;
+import com.tsd.idea_cipher.modes.algorithms.ECB;
+import com.tsd.idea_cipher.modes.algorithms.OFB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Benchmark pentru modurile de operare, in ambele directii.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationModeBenchmark {
+
+    static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Param({"ECB", "CBC", "CFB", "OFB", "CTR", "CTR_PMAC"})
+    private OperationMode.Mode mode;
+
+    @Param({"true", "false"})
+    private boolean encrypt;
+
+    @Param({"8", "4096", "1048576"})
+    private int size;
+
+    private OperationMode opMod;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        opMod = newMode(mode, encrypt);
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+    }
+
+    @Benchmark
+    public byte[] crypt(Counters counters) {
+        for (int pos = 0; pos < size; pos += 8) {
+            opMod.crypt(data, pos);
+        }
+        counters.add(size);
+        return data;
+    }
+
+    /**
+     * Aceeasi selectie ca in FileCipher.
+     */
+    static OperationMode newMode(OperationMode.Mode mode, boolean encrypt) {
+        switch (mode) {
+            case ECB:
+                return new ECB(encrypt, KEY);
+            case CBC:
+                return new CBC(encrypt, KEY);
+            case CFB:
+                return new CFB(encrypt, KEY);
+            case OFB:
+                return new OFB(KEY);
+            case CTR:
+                return new CTR(encrypt, KEY);
+            case CTR_PMAC:
+                return new CTRPMAC(encrypt, KEY, null);
+            default:
+                throw new IllegalArgumentException("Incorrect mode of operation.");
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package com.tsd.idea_cipher.cli;
+
+import com.tsd.idea_cipher.io.IdeaOutputStream;
+import com.tsd.idea_cipher.modes.BatchProcessor;
+import com.tsd.idea_cipher.modes.FileProcessor;
+import com.tsd.idea_cipher.modes.OperationMode;
+import com.tsd.idea_cipher.modes.PackedArchive;
+
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Linia de comanda, fara interfata grafica (si fara JavaFX):
+ * <pre>
+ * java -cp idea_cipher.jar com.tsd.idea_cipher.cli.IdeaCli encrypt|decrypt|verify [optiuni] INPUT...
+ * </pre>
+ * INPUT poate fi un fisier, un director (parcurs recursiv), un glob ("logs/*.txt", "data/**") sau - (stdin).
+ * Fara -o, iesirea e langa intrare: criptarea adauga extensia .cif, decriptarea o elimina (sau adauga .dec).
+ * Cu -o, iesirea e fisierul dat (o singura intrare) sau un director in care se reproduce structura intrarilor.
+ * verify verifica doar tag-ul fisierelor criptate cu CTR_PMAC, fara a scrie iesirea.
+ * Cu -i fisierele sunt criptate / decriptate pe loc, fara iesire si fara a fi redenumite.
+ * pack pune toate intrarile intr-o singura arhiva criptata ({@link PackedArchive}), unpack extrage toti membrii arhivei
+ * sau doar pe cei dati.
+ */
+public class IdeaCli {
+
+    static final String CRYPT_EXT = ".cif";
+    static final String DECRYPT_EXT = ".dec";
+    private static final int BUF_SIZE = 0x10000;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: IdeaCli encrypt|decrypt|verify [options] INPUT...",
+            "       IdeaCli pack -o ARCHIVE [options] INPUT...",
+            "       IdeaCli unpack [-o DIRECTORY] [options] ARCHIVE [MEMBER...]",
+            "  INPUT           file, directory (recursive), glob (\"logs/*.txt\") or - for stdin",
+            "  -k KEY          key (default: IDEA_KEY environment variable)",
+            "  -m MODE         ECB, CBC, CFB, OFB, CTR or CTR_PMAC (authenticated) (default: CBC,",
+            "                  CTR_PMAC for verify)",
+            "  -o OUTPUT       output file, output directory, or - for stdout",
+            "  -t THREADS      worker threads (default: number of processors)",
+            "  -s SEGMENT      CFB segment size in bytes: 1, 2, 4 or 8 (default: 8)",
+            "  -c CHUNK        CBC only: encrypt into a chunked container with CHUNK-byte chunks, encrypted",
+            "                  in parallel (for example 4194304); decryption detects the container",
+            "  -r MB           single file: checkpoint every MB megabytes into OUTPUT.ckpt; running the same",
+            "                  command again after an interruption resumes from the last checkpoint",
+            "  -u              CBC encryption: update an existing OUTPUT, re-encrypting only the changed chunks",
+            "                  (-c, default 4194304) recorded in OUTPUT.manifest",
+            "  -z LEVEL        compress before encryption, LEVEL 1 (fast) to 9 (best); decryption detects",
+            "                  compressed files",
+            "  -i              in place: overwrite each INPUT instead of writing an output file (crash-safe,",
+            "                  with the journal INPUT.ipj; run the same command again after an interruption)",
+            "  -q              no summary");
+
+    private boolean encrypt;
+    private boolean verify;
+    private boolean pack;
+    private boolean unpack;
+    private String key = System.getenv("IDEA_KEY");
+    private OperationMode.Mode mode;
+    private String output;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int segmentSize = 8;
+    private int chunkSize;
+    private int checkpointMb;
+    private int compressionLevel;
+    private boolean incremental;
+    private boolean inPlace;
+    private boolean quiet;
+    private final List<String> inputs = new ArrayList<>();
+
+    private final InputStream stdin;
+    private final PrintStream stdout;
+    private final PrintStream stderr;
+
+    IdeaCli(InputStream stdin, PrintStream stdout, PrintStream stderr) {
+        this.stdin = stdin;
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new IdeaCli(System.in, System.out, System.err).run(args));
+    }
+
+    /**
+     * Ruleaza comanda. Intoarce codul de iesire: 0 succes, 1 erori la procesare, 2 argumente gresite.
+     */
+    int run(String[] args) {
+        try {
+            parse(args);
+        } catch (IllegalArgumentException e) {
+            stderr.println("Error: " + e.getMessage());
+            stderr.println(USAGE);
+            return 2;
+        }
+        long t0 = System.nanoTime();
+        long bytes = 0;
+        int files = 0;
+        int errors = 0;
+        if (pack) {
+            try {
+                List<Job> jobs = jobs();
+                bytes = pack(jobs);
+                files = jobs.size();
+            } catch (IOException | RuntimeException e) {
+                stderr.println("Error: " + e.getMessage());
+                errors++;
+            }
+        } else if (unpack) {
+            try (PackedArchive.Reader reader = new PackedArchive.Reader(Paths.get(inputs.get(0)), key, null)) {
+                for (PackedArchive.Entry entry : members(reader)) {
+                    try {
+                        extract(reader, entry);
+                        bytes += entry.getSize();
+                        files++;
+                    } catch (IOException e) {
+                        stderr.println("Error: " + entry.getName() + ": " + e.getMessage());
+                        errors++;
+                    }
+                }
+            } catch (IOException e) {
+                stderr.println("Error: " + inputs.get(0) + ": " + e.getMessage());
+                errors++;
+            }
+        } else if (inputs.size() == 1 && inputs.get(0).equals("-")) {
+            try {
+                bytes = cryptStream();
+                files = 1;
+            } catch (IOException e) {
+                stderr.println("Error: stdin: " + e.getMessage());
+                errors++;
+            }
+        } else {
+            List<Job> jobs;
+            try {
+                jobs = jobs();
+            } catch (IOException e) {
+                stderr.println("Error: " + e.getMessage());
+                return 1;
+            }
+            boolean single = jobs.size() == 1 && inputs.size() == 1
+                    && Files.isRegularFile(Paths.get(inputs.get(0)));
+            if (verify) {
+                for (Job job : jobs) {
+                    try {
+                        bytes += verifyFile(job);
+                        files++;
+                    } catch (IOException | RuntimeException e) {
+                        stderr.println("Error: " + job.input + ": " + e.getMessage());
+                        errors++;
+                    }
+                }
+            } else if (inPlace) {
+                for (Job job : jobs) {
+                    try {
+                        bytes += cryptInPlace(job);
+                        files++;
+                    } catch (IOException | RuntimeException e) {
+                        stderr.println("Error: " + job.input + ": " + e.getMessage());
+                        errors++;
+                    }
+                }
+            } else if (single) {
+                try {
+                    bytes = cryptFile(jobs.get(0), true);
+                    files = 1;
+                } catch (IOException | RuntimeException e) {
+                    stderr.println("Error: " + jobs.get(0).input + ": " + e.getMessage());
+                    errors++;
+                }
+            } else {
+                List<BatchProcessor.Job> batch = new ArrayList<>();
+                for (Job job : jobs) {
+                    Path out = outputOf(job, false);
+                    if (isSameFile(job.input, out)) {
+                        stderr.println("Error: " + job.input + ": Output is the same file as the input.");
+                        errors++;
+                    } else {
+                        batch.add(new BatchProcessor.Job(job.input, out));
+                    }
+                }
+                try {
+                    BatchProcessor.Result result = cryptFiles(batch);
+                    bytes = result.getBytes();
+                    files = result.getFiles();
+                    errors += result.getFailed();
+                } catch (IOException e) {
+                    stderr.println("Error: " + e.getMessage());
+                    errors++;
+                }
+            }
+        }
+        if (!quiet) {
+            stderr.println(summary(files, errors, bytes, System.nanoTime() - t0));
+        }
+        return errors == 0 ? 0 : 1;
+    }
+
+    private void parse(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Missing command.");
+        }
+        if (args[0].equals("encrypt")) {
+            encrypt = true;
+        } else if (args[0].equals("verify")) {
+            verify = true;
+        } else if (args[0].equals("pack")) {
+            pack = true;
+        } else if (args[0].equals("unpack")) {
+            unpack = true;
+        } else if (!args[0].equals("decrypt")) {
+            throw new IllegalArgumentException("Unknown command: " + args[0]);
+        }
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-k":
+                    key = value(args, ++i);
+                    break;
+                case "-m":
+                    String name = value(args, ++i);
+                    try {
+                        mode = OperationMode.Mode.valueOf(name.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown mode: " + name);
+                    }
+                    break;
+                case "-o":
+                    output = value(args, ++i);
+                    break;
+                case "-t":
+                    threads = number(value(args, ++i));
+                    break;
+                case "-s":
+                    segmentSize = number(value(args, ++i));
+                    break;
+                case "-c":
+                    chunkSize = number(value(args, ++i));
+                    break;
+                case "-r":
+                    checkpointMb = number(value(args, ++i));
+                    break;
+                case "-u":
+                    incremental = true;
+                    break;
+                case "-z":
+                    compressionLevel = number(value(args, ++i));
+                    break;
+                case "-i":
+                    inPlace = true;
+                    break;
+                case "-q":
+                    quiet = true;
+                    break;
+                default:
+                    if (arg.startsWith("-") && !arg.equals("-")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(arg);
+            }
+        }
+        if (mode == null) {
+            mode = verify ? OperationMode.Mode.CTR_PMAC : OperationMode.Mode.CBC;
+        }
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Missing key (-k or IDEA_KEY).");
+        } else if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("Missing input.");
+        } else if (verify && mode != OperationMode.Mode.CTR_PMAC) {
+            throw new IllegalArgumentException("Only CTR_PMAC files can be verified.");
+        } else if ((pack || unpack) && (inPlace || inputs.contains("-") || compressionLevel != 0)) {
+            throw new IllegalArgumentException("pack / unpack need files (no -i, -z or stdin).");
+        } else if (pack && (output == null || output.equals("-"))) {
+            throw new IllegalArgumentException("pack needs the archive file (-o).");
+        } else if (inputs.contains("-") && (verify || mode == OperationMode.Mode.CTR
+                || mode == OperationMode.Mode.CTR_PMAC)) {
+            // Nonce-ul e dupa date, deci nu poate fi citit inaintea lor dintr-un flux
+            throw new IllegalArgumentException("CTR and CTR_PMAC need files, not stdin.");
+        } else if (inPlace && (verify || output != null || inputs.contains("-"))) {
+            throw new IllegalArgumentException("In-place processing needs input files and no -o.");
+        } else if (compressionLevel != 0 && (compressionLevel < 1 || compressionLevel > 9)) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9.");
+        } else if (compressionLevel != 0 && (inPlace || inputs.contains("-"))) {
+            throw new IllegalArgumentException("Compression needs input and output files (no -i, no stdin).");
+        } else if (incremental && (!encrypt || mode != OperationMode.Mode.CBC || inPlace || compressionLevel != 0
+                || inputs.contains("-"))) {
+            throw new IllegalArgumentException("-u needs CBC encryption of files (no -i, -z or stdin).");
+        } else if (checkpointMb != 0 && (checkpointMb < 0 || verify || pack || unpack || inPlace
+                || inputs.size() > 1 || inputs.contains("-") || isGlob(inputs.get(0))
+                || Files.isDirectory(Paths.get(inputs.get(0))))) {
+            // Punctele de control sunt scrise doar de procesarea unui singur fisier (cryptFile)
+            throw new IllegalArgumentException("-r needs a single input file (no -i, directory, glob or stdin).");
+        } else if (inputs.size() > 1 && inputs.contains("-")) {
+            throw new IllegalArgumentException("stdin (-) cannot be combined with other inputs.");
+        } else if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed.");
+        } else if (chunkSize < 0 || chunkSize % 8 != 0) {
+            throw new IllegalArgumentException("Chunk size must be a multiple of 8.");
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    private static int number(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    /**
+     * Un fisier de procesat: intrarea si calea relativa folosita in directorul de iesire.
+     */
+    static final class Job {
+        final Path input;
+        final Path relative;
+
+        Job(Path input, Path relative) {
+            this.input = input;
+            this.relative = relative;
+        }
+    }
+
+    /**
+     * Fisierele date de intrari: fisiere, directoare parcurse recursiv si globuri.
+     */
+    private List<Job> jobs() throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        for (String input : inputs) {
+            if (isGlob(input)) {
+                jobs.addAll(glob(input));
+                continue;
+            }
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                        jobs.add(new Job(file, path.relativize(file)));
+                    }
+                }
+            } else if (Files.isRegularFile(path)) {
+                jobs.add(new Job(path, path.getFileName()));
+            } else {
+                throw new FileNotFoundException(input + " (no such file or directory)");
+            }
+        }
+        return jobs;
+    }
+
+    private static boolean isGlob(String input) {
+        return input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0
+                || input.indexOf('{') >= 0;
+    }
+
+    /**
+     * Fisierele care se potrivesc cu globul, cautate de la directorul dinaintea primului caracter special.
+     */
+    private static List<Job> glob(String pattern) throws IOException {
+        String normalized = pattern.replace('\\', '/');
+        int special = normalized.length();
+        for (char c : new char[]{'*', '?', '[', '{'}) {
+            int i = normalized.indexOf(c);
+            if (i >= 0) {
+                special = Math.min(special, i);
+            }
+        }
+        int slash = normalized.lastIndexOf('/', special);
+        Path base = Paths.get(slash < 0 ? "." : normalized.substring(0, slash + 1));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalized.substring(slash + 1));
+        List<Job> jobs = new ArrayList<>();
+        if (Files.isDirectory(base)) {
+            try (Stream<Path> files = Files.walk(base)) {
+                for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    Path relative = base.relativize(file);
+                    if (matcher.matches(relative)) {
+                        jobs.add(new Job(file, relative));
+                    }
+                }
+            }
+        }
+        if (jobs.isEmpty()) {
+            throw new FileNotFoundException(pattern + " (no matching files)");
+        }
+        return jobs;
+    }
+
+    /**
+     * Fisierul de iesire pentru o intrare.
+     *
+     * @param single intrarea e un singur fisier: -o poate fi chiar fisierul de iesire
+     */
+    private Path outputOf(Job job, boolean single) {
+        if (output == null) {
+            return job.input.resolveSibling(outputName(job.input.getFileName().toString()));
+        }
+        Path out = Paths.get(output);
+        if (single && !Files.isDirectory(out)) {
+            return out;
+        }
+        Path relative = job.relative;
+        Path name = Paths.get(outputName(relative.getFileName().toString()));
+        return out.resolve(relative.getParent() != null ? relative.getParent().resolve(name) : name);
+    }
+
+    private String outputName(String name) {
+        if (encrypt) {
+            return name + CRYPT_EXT;
+        } else if (name.endsWith(CRYPT_EXT) && name.length() > CRYPT_EXT.length()) {
+            return name.substring(0, name.length() - CRYPT_EXT.length());
+        }
+        return name + DECRYPT_EXT;
+    }
+
+    /**
+     * Cripteaza / decripteaza un fisier. Intoarce dimensiunea intrarii.
+     */
+    private long cryptFile(Job job, boolean single) throws IOException {
+        Path out = outputOf(job, single);
+        if (isSameFile(job.input, out)) {
+            throw new IOException("Output is the same file as the input.");
+        }
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        FileProcessor processor = new FileProcessor(job.input.toString(), out.toString(), key, encrypt, mode);
+        processor.setThreads(threads);
+        processor.setSegmentSize(segmentSize);
+        processor.setChunkSize(chunkSize);
+        processor.setCheckpointInterval(checkpointMb * 0x100000L);
+        processor.setCompressionLevel(compressionLevel);
+        processor.setIncremental(incremental);
+        processor.cryptFile();
+        return Files.size(job.input);
+    }
+
+    /**
+     * Cripteaza / decripteaza un fisier pe loc. Intoarce dimensiunea intrarii.
+     */
+    private long cryptInPlace(Job job) throws IOException {
+        long size = Files.size(job.input);
+        FileProcessor processor = new FileProcessor(job.input.toString(), null, key, encrypt, mode);
+        processor.setSegmentSize(segmentSize);
+        processor.setInPlace(true);
+        processor.cryptFile();
+        return size;
+    }
+
+    /**
+     * Verifica tag-ul unui fisier CTR_PMAC. Intoarce dimensiunea fisierului.
+     */
+    private long verifyFile(Job job) throws IOException {
+        FileProcessor processor = new FileProcessor(job.input.toString(), null, key, false, mode);
+        processor.verifyFile();
+        return Files.size(job.input);
+    }
+
+    /**
+     * Pune fisierele intr-o arhiva, cu caile relative ca nume. Intoarce dimensiunea totala a fisierelor.
+     */
+    private long pack(List<Job> jobs) throws IOException {
+        long bytes = 0;
+        try (PackedArchive.Writer writer = new PackedArchive.Writer(Paths.get(output), key, null)) {
+            for (Job job : jobs) {
+                StringBuilder name = new StringBuilder();
+                for (Path part : job.relative) {
+                    name.append(name.length() > 0 ? "/" : "").append(part);
+                }
+                writer.add(name.toString(), job.input);
+                bytes += Files.size(job.input);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Membrii de extras: cei dati dupa arhiva sau, fara nume, toti membrii.
+     */
+    private List<PackedArchive.Entry> members(PackedArchive.Reader reader) throws IOException {
+        if (inputs.size() == 1) {
+            return reader.getEntries();
+        }
+        List<PackedArchive.Entry> members = new ArrayList<>();
+        for (String name : inputs.subList(1, inputs.size())) {
+            PackedArchive.Entry entry = reader.getEntry(name);
+            if (entry == null) {
+                throw new FileNotFoundException(name + " (no such archive member)");
+            }
+            members.add(entry);
+        }
+        return members;
+    }
+
+    /**
+     * Extrage un membru in directorul -o (implicit, directorul curent), fara a iesi din el.
+     */
+    private void extract(PackedArchive.Reader reader, PackedArchive.Entry entry) throws IOException {
+        Path dir = Paths.get(output != null ? output : ".").toAbsolutePath().normalize();
+        Path target = dir.resolve(entry.getName()).normalize();
+        if (!target.startsWith(dir) || target.equals(dir)) {
+            throw new IOException("Unsafe member name.");
+        }
+        Files.createDirectories(target.getParent());
+        reader.extract(entry.getName(), target);
+    }
+
+    /**
+     * Cripteaza / decripteaza mai multe fisiere odata, cate unul pe fir.
+     */
+    private BatchProcessor.Result cryptFiles(List<BatchProcessor.Job> jobs) throws IOException {
+        BatchProcessor processor = new BatchProcessor(key, encrypt, mode);
+        processor.setWorkers(threads);
+        processor.setSegmentSize(segmentSize);
+        processor.setChunkSize(chunkSize);
+        processor.setCompressionLevel(compressionLevel);
+        processor.setIncremental(incremental);
+        processor.setListener((job, error) -> {
+            if (error != null) {
+                stderr.println("Error: " + job.getInput() + ": " + error.getMessage());
+            }
+        });
+        return processor.process(jobs);
+    }
+
+    private static boolean isSameFile(Path input, Path output) {
+        return output.toAbsolutePath().normalize().equals(input.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Cripteaza / decripteaza stdin in stdout (sau in fisierul -o). Intoarce numarul de octeti cititi.
+     */
+    private long cryptStream() throws IOException {
+        OperationMode opMod = FileProcessor.newMode(mode, encrypt, key, segmentSize, null);
+        boolean toStdout = output == null || output.equals("-");
+        OutputStream target = toStdout ? new NonClosingOutputStream(stdout) : Files.newOutputStream(Paths.get(output));
+        long bytes = 0;
+        try (OutputStream out = new IdeaOutputStream(target, opMod)) {
+            byte[] buf = new byte[BUF_SIZE];
+            int n;
+            while ((n = stdin.read(buf)) >= 0) {
+                out.write(buf, 0, n);
+                bytes += n;
+            }
+        }
+        return bytes;
+    }
+
+    static String summary(int files, int errors, long bytes, long nanos) {
+        double seconds = nanos / 1e9;
+        double megabytes = bytes / (1024.0 * 1024.0);
+        return String.format(Locale.ROOT, "%d file(s)%s, %.2f MB in %.3f s (%.2f MB/s, %.1f files/s)",
+                files, errors > 0 ? ", " + errors + " failed" : "", megabytes, seconds,
+                seconds > 0 ? megabytes / seconds : 0, seconds > 0 ? files / seconds : 0);
+    }
+
+    /**
+     * stdout nu e inchis odata cu fluxul de criptare, doar golit.
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
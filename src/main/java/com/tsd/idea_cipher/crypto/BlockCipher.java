@@ -1,5 +1,7 @@
 package com.tsd.idea_cipher.crypto;
 
+import java.nio.ByteBuffer;
+
 /**
  * BlockCipher.
  */
@@ -39,6 +41,14 @@ public abstract class BlockCipher {
      */
     public abstract void crypt(byte[] data, int offset);
 
+    /**
+     * Criptare / Decriptare bloc de 64-biti dat ca long (big-endian: primul octet al blocului e cel mai semnificativ).
+     *
+     * @param block 64-biti bloc de date
+     * @return blocul rezultat
+     */
+    public abstract long crypt(long block);
+
     /**
      * Criptare / Decriptare bloc de date de 64-biti.
      *
@@ -47,4 +57,34 @@ public abstract class BlockCipher {
     public void crypt(byte[] data) {
         crypt(data, 0);
     }
+
+    /**
+     * Criptare / Decriptare a mai multor blocuri de 64-biti consecutive.
+     *
+     * @param data   date
+     * @param offset punct de start
+     * @param len    numarul de octeti (multiplu de dimensiunea blocului)
+     */
+    public void crypt(byte[] data, int offset, int len) {
+        for (int end = offset + len; offset < end; offset += blockSize) {
+            crypt(data, offset);
+        }
+    }
+
+    /**
+     * Criptare / Decriptare pe loc a octetilor ramasi in buffer (heap, direct sau mapat), multiplu de dimensiunea
+     * blocului. Bufferele directe / mapate sunt procesate bloc cu bloc in buffer, fara copiere. La final pozitia e
+     * egala cu limita.
+     */
+    public void crypt(ByteBuffer data) {
+        BufferCrypt.crypt(data, blockSize, this::crypt, this::crypt);
+    }
+
+    /**
+     * Criptare / Decriptare pe loc a octetilor ramasi in length buffere incepand cu data[offset] (scatter / gather).
+     * Un bloc poate continua de la un buffer la urmatorul.
+     */
+    public void crypt(ByteBuffer[] data, int offset, int length) {
+        BufferCrypt.crypt(data, offset, length, blockSize, this::crypt, this::crypt);
+    }
 }
@@ -0,0 +1,120 @@
+package com.tsd.idea_cipher.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Criptarea pe loc a datelor din ByteBuffer-e (heap, directe sau mapate).
+ *
+ * Bufferele heap sunt criptate direct in tabloul lor, cu nucleele pe mai multe blocuri ale cifrului. Cele directe /
+ * mapate nu sunt copiate intr-un tablou: fiecare bloc e citit si scris in buffer cu getLong / putLong absolute si
+ * criptat ca long (big-endian, indiferent de ordinea octetilor bufferului).
+ */
+public final class BufferCrypt {
+
+    /**
+     * Criptare / decriptare pe loc a len octeti (multiplu de dimensiunea blocului) de la pozitia pos.
+     */
+    @FunctionalInterface
+    public interface Bulk {
+        void crypt(byte[] data, int pos, int len);
+    }
+
+    /**
+     * Criptare / decriptare a unui bloc de 64 de biti dat ca long (big-endian); intoarce blocul rezultat.
+     */
+    @FunctionalInterface
+    public interface Word {
+        long crypt(long block);
+    }
+
+    private BufferCrypt() {
+    }
+
+    /**
+     * Cripteaza / decripteaza octetii ramasi in data (intre pozitie si limita, multiplu de blockSize): cu bulk daca
+     * bufferul are un tablou, altfel bloc cu bloc cu word. La final pozitia e egala cu limita.
+     */
+    public static void crypt(ByteBuffer data, int blockSize, Bulk bulk, Word word) {
+        int len = data.remaining();
+        if (len % blockSize != 0) {
+            throw new IllegalArgumentException("Data length is not a multiple of " + blockSize + ".");
+        }
+        if (data.hasArray()) {
+            bulk.crypt(data.array(), data.arrayOffset() + data.position(), len);
+            data.position(data.limit());
+            return;
+        }
+        if (blockSize != Long.BYTES) {
+            throw new IllegalArgumentException("Direct buffers need " + Long.BYTES + "-byte blocks.");
+        }
+        boolean swap = data.order() != ByteOrder.BIG_ENDIAN;
+        for (int pos = data.position(), end = data.limit(); pos < end; pos += Long.BYTES) {
+            long block = data.getLong(pos);
+            block = word.crypt(swap ? Long.reverseBytes(block) : block);
+            data.putLong(pos, swap ? Long.reverseBytes(block) : block);
+        }
+        data.position(data.limit());
+    }
+
+    /**
+     * Cripteaza / decripteaza octetii ramasi in length buffere incepand cu data[offset], ca pe un singur sir de date
+     * (scatter / gather). Doar totalul trebuie sa fie multiplu de blockSize: un bloc poate incepe intr-un buffer si
+     * continua in urmatoarele. La final pozitia fiecarui buffer e egala cu limita.
+     */
+    public static void crypt(ByteBuffer[] data, int offset, int length, int blockSize, Bulk bulk,
+                             Word word) {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += data[i].remaining();
+        }
+        if (total % blockSize != 0) {
+            throw new IllegalArgumentException("Data length is not a multiple of " + blockSize + ".");
+        }
+        // Blocul impartit intre buffere: bucatile lui (buffer, pozitie, lungime)
+        byte[] block = new byte[blockSize];
+        ByteBuffer[] parts = new ByteBuffer[blockSize];
+        int[] partPos = new int[blockSize];
+        int[] partLen = new int[blockSize];
+        int nParts = 0;
+        int have = 0;
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer buf = data[i];
+            if (have > 0 && buf.hasRemaining()) {
+                // Completeaza blocul inceput in bufferele anterioare
+                int k = Math.min(blockSize - have, buf.remaining());
+                parts[nParts] = buf;
+                partPos[nParts] = buf.position();
+                partLen[nParts++] = k;
+                buf.get(block, have, k);
+                have += k;
+                if (have == blockSize) {
+                    bulk.crypt(block, 0, blockSize);
+                    for (int p = 0, b = 0; p < nParts; b += partLen[p], p++) {
+                        ByteBuffer part = parts[p].duplicate();
+                        part.position(partPos[p]);
+                        part.put(block, b, partLen[p]);
+                    }
+                    have = 0;
+                    nParts = 0;
+                }
+            }
+            // Blocurile intregi din buffer
+            int whole = buf.remaining() / blockSize * blockSize;
+            if (whole > 0) {
+                int limit = buf.limit();
+                buf.limit(buf.position() + whole);
+                crypt(buf, blockSize, bulk, word);
+                buf.limit(limit);
+            }
+            // Inceputul unui bloc care continua in bufferul urmator
+            if (buf.hasRemaining()) {
+                parts[nParts] = buf;
+                partPos[nParts] = buf.position();
+                partLen[nParts++] = buf.remaining();
+                have = buf.remaining();
+                buf.get(block, 0, have);
+            }
+        }
+    }
+}
@@ -29,6 +29,44 @@ public class CrytoUtils {
         }
     }
 
+    /**
+     * XOR pe un bloc din a cu un bloc din b.
+     *
+     * @param a bloc 1
+     * @param pos pozitia in a
+     * @param b bloc 2
+     * @param bPos pozitia in b
+     * @param blockSize dimensiunea blocului la xor
+     */
+    public static void xor(byte[] a, int pos, byte[] b, int bPos, int blockSize) {
+        for (int p = 0; p < blockSize; p++) {
+            a[pos + p] ^= b[bPos + p];
+        }
+    }
+
+    /**
+     * Blocul de 8 octeti de la pozitia pos ca long (big-endian).
+     */
+    public static long getLong(byte[] b, int pos) {
+        return (b[pos] & 0xFFL) << 56 | (b[pos + 1] & 0xFFL) << 48 | (b[pos + 2] & 0xFFL) << 40
+                | (b[pos + 3] & 0xFFL) << 32 | (b[pos + 4] & 0xFFL) << 24 | (b[pos + 5] & 0xFFL) << 16
+                | (b[pos + 6] & 0xFFL) << 8 | (b[pos + 7] & 0xFFL);
+    }
+
+    /**
+     * Scrie v ca bloc de 8 octeti la pozitia pos (big-endian).
+     */
+    public static void putLong(byte[] b, int pos, long v) {
+        b[pos] = (byte) (v >>> 56);
+        b[pos + 1] = (byte) (v >>> 48);
+        b[pos + 2] = (byte) (v >>> 40);
+        b[pos + 3] = (byte) (v >>> 32);
+        b[pos + 4] = (byte) (v >>> 24);
+        b[pos + 5] = (byte) (v >>> 16);
+        b[pos + 6] = (byte) (v >>> 8);
+        b[pos + 7] = (byte) v;
+    }
+
     /**
      * Concateneaza doi octezi intr-un bloc de 16 biti.
      */
@@ -7,32 +7,81 @@ public class IdeaCipher extends BlockCipher {
     private static final int ROUNDS = 8;
 
     private boolean encrypt;
+    private KeyScheduleCache cache;
     private int[] subKey;
 
     public IdeaCipher(String charKey, boolean encrypt) {
+        this(charKey, encrypt, null);
+    }
+
+    /**
+     * @param cache cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public IdeaCipher(String charKey, boolean encrypt, KeyScheduleCache cache) {
         super(KEY_SIZE, BLOCK_SIZE);
         this.encrypt = encrypt;
+        this.cache = cache;
         setKey(charKey);
     }
 
+    /**
+     * Cheia data direct ca 16 octeti, de exemplu o cheie derivata.
+     *
+     * @param cache cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public IdeaCipher(byte[] key, boolean encrypt, KeyScheduleCache cache) {
+        super(KEY_SIZE, BLOCK_SIZE);
+        this.encrypt = encrypt;
+        this.cache = cache;
+        setKey(key);
+    }
+
     @Override
     protected void setKey(byte[] key) {
+        subKey = cache != null ? cache.get(key, encrypt) : schedule(key, encrypt);
+    }
+
+    /**
+     * Subcheile de criptare sau de decriptare pentru o cheie.
+     */
+    static int[] schedule(byte[] key, boolean encrypt) {
         int[] tempSubKey = generateSubkeys(key);
         if (encrypt) {
-            subKey = tempSubKey;
+            return tempSubKey;
         } else {
-            subKey = invertSubkey(tempSubKey);
+            return invertSubkey(tempSubKey);
         }
     }
 
-    @SuppressWarnings({"SuspiciousNameCombination", "PointlessArithmeticExpression"})
     @Override
     public void crypt(byte[] data, int offset) {
+        cryptBlock(data, offset);
+    }
+
+    /**
+     * Cripteaza / decripteaza un bloc dat ca long (big-endian: primul octet al blocului e cel mai semnificativ),
+     * fara tablouri; pentru modurile care tin blocul de inlantuire intr-un registru.
+     */
+    @Override
+    public long crypt(long block) {
+        return rounds((int) (block >>> 48), (int) (block >>> 32) & 0xFFFF, (int) (block >>> 16) & 0xFFFF,
+                (int) block & 0xFFFF);
+    }
+
+    @SuppressWarnings("PointlessArithmeticExpression")
+    private void cryptBlock(byte[] data, int offset) {
         // Impartiti blocul de date de 64 de biti in 4 sub blocuri de 16 biti
-        int x1 = CrytoUtils.concat2Bytes(data[offset + 0], data[offset + 1]);
-        int x2 = CrytoUtils.concat2Bytes(data[offset + 2], data[offset + 3]);
-        int x3 = CrytoUtils.concat2Bytes(data[offset + 4], data[offset + 5]);
-        int x4 = CrytoUtils.concat2Bytes(data[offset + 6], data[offset + 7]);
+        long r = rounds(word(data, offset + 0), word(data, offset + 2), word(data, offset + 4),
+                word(data, offset + 6));
+        // Reatasarea celor 4 sub-blocuri
+        CrytoUtils.putLong(data, offset, r);
+    }
+
+    /**
+     * Rundele pentru cele 4 sub-blocuri; intoarce blocul rezultat ca long.
+     */
+    @SuppressWarnings("SuspiciousNameCombination")
+    private long rounds(int x1, int x2, int x3, int x4) {
         // Ficare runda
         int k = 0; // subcheia index
         for (int round = 0; round < ROUNDS; round++) {
@@ -52,19 +101,98 @@ public class IdeaCipher extends BlockCipher {
             x4 = y4 ^ y10;                          // XOR rezultatul pasilor y4 si y10
         }
         // Transformarea finala a iesirii
-        int r0 = mul(x1, subKey[k++]);              // Multiplica X1 si prima subcheie
-        int r1 = add(x3, subKey[k++]);              // Aduna X2 si a 2-a subcheie
-        int r2 = add(x2, subKey[k++]);              // Aduna X3 si a 3-a subcheie
-        int r3 = mul(x4, subKey[k]);                // Multiplica X4 si a 4-a subcheie
-        // Reatasarea celor 4 sub-blocuri
-        data[offset + 0] = (byte) (r0 >> 8);
-        data[offset + 1] = (byte) r0;
-        data[offset + 2] = (byte) (r1 >> 8);
-        data[offset + 3] = (byte) r1;
-        data[offset + 4] = (byte) (r2 >> 8);
-        data[offset + 5] = (byte) r2;
-        data[offset + 6] = (byte) (r3 >> 8);
-        data[offset + 7] = (byte) r3;
+        long r0 = mul(x1, subKey[k++]);             // Multiplica X1 si prima subcheie
+        long r1 = add(x3, subKey[k++]);             // Aduna X2 si a 2-a subcheie
+        long r2 = add(x2, subKey[k++]);             // Aduna X3 si a 3-a subcheie
+        long r3 = mul(x4, subKey[k]);               // Multiplica X4 si a 4-a subcheie
+        return r0 << 48 | r1 << 32 | r2 << 16 | r3;
+    }
+
+    /**
+     * Cripteaza / decripteaza len octeti (multiplu de 8) cate 4 blocuri odata. Rundele celor 4 blocuri independente
+     * sunt intretesute, astfel incat inmultirile lor se suprapun in procesor.
+     * Daca JVM-ul vectorizeaza bucle, blocurile sunt procesate pe benzi de {@link IdeaLanes}.
+     */
+    @Override
+    public void crypt(byte[] data, int offset, int len) {
+        int end = offset + len;
+        if (IdeaLanes.ENABLED && len >= IdeaLanes.MIN_BLOCKS * BLOCK_SIZE) {
+            for (; offset < end; offset += IdeaLanes.LANES * BLOCK_SIZE) {
+                IdeaLanes.crypt(subKey, data, offset, Math.min((end - offset) / BLOCK_SIZE, IdeaLanes.LANES));
+            }
+            return;
+        }
+        for (; offset + 4 * BLOCK_SIZE <= end; offset += 4 * BLOCK_SIZE) {
+            crypt4(data, offset);
+        }
+        for (; offset < end; offset += BLOCK_SIZE) {
+            cryptBlock(data, offset);
+        }
+    }
+
+    /**
+     * Cripteaza / decripteaza 4 blocuri consecutive (a, b, c, d) in paralel.
+     */
+    @SuppressWarnings("SuspiciousNameCombination")
+    private void crypt4(byte[] data, int offset) {
+        int a1 = word(data, offset), a2 = word(data, offset + 2);
+        int a3 = word(data, offset + 4), a4 = word(data, offset + 6);
+        int b1 = word(data, offset + 8), b2 = word(data, offset + 10);
+        int b3 = word(data, offset + 12), b4 = word(data, offset + 14);
+        int c1 = word(data, offset + 16), c2 = word(data, offset + 18);
+        int c3 = word(data, offset + 20), c4 = word(data, offset + 22);
+        int d1 = word(data, offset + 24), d2 = word(data, offset + 26);
+        int d3 = word(data, offset + 28), d4 = word(data, offset + 30);
+        int k = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            int k1 = subKey[k++], k2 = subKey[k++], k3 = subKey[k++];
+            int k4 = subKey[k++], k5 = subKey[k++], k6 = subKey[k++];
+            // Pasii y1 - y4
+            a1 = mul(a1, k1); b1 = mul(b1, k1); c1 = mul(c1, k1); d1 = mul(d1, k1);
+            a2 = add(a2, k2); b2 = add(b2, k2); c2 = add(c2, k2); d2 = add(d2, k2);
+            a3 = add(a3, k3); b3 = add(b3, k3); c3 = add(c3, k3); d3 = add(d3, k3);
+            a4 = mul(a4, k4); b4 = mul(b4, k4); c4 = mul(c4, k4); d4 = mul(d4, k4);
+            // Pasii y5 - y7
+            int a7 = mul(a1 ^ a3, k5), b7 = mul(b1 ^ b3, k5), c7 = mul(c1 ^ c3, k5), d7 = mul(d1 ^ d3, k5);
+            // Pasii y8 - y9
+            int a9 = mul(add(a2 ^ a4, a7), k6), b9 = mul(add(b2 ^ b4, b7), k6);
+            int c9 = mul(add(c2 ^ c4, c7), k6), d9 = mul(add(d2 ^ d4, d7), k6);
+            // Pasul y10
+            int a10 = add(a7, a9), b10 = add(b7, b9), c10 = add(c7, c9), d10 = add(d7, d9);
+            // Iesirea rundei (sub-blocurile din mijloc sunt inversate)
+            int t;
+            a1 ^= a9; t = a2; a2 = a3 ^ a9; a3 = t ^ a10; a4 ^= a10;
+            b1 ^= b9; t = b2; b2 = b3 ^ b9; b3 = t ^ b10; b4 ^= b10;
+            c1 ^= c9; t = c2; c2 = c3 ^ c9; c3 = t ^ c10; c4 ^= c10;
+            d1 ^= d9; t = d2; d2 = d3 ^ d9; d3 = t ^ d10; d4 ^= d10;
+        }
+        // Transformarea finala a iesirii
+        int k1 = subKey[k++], k2 = subKey[k++], k3 = subKey[k++], k4 = subKey[k];
+        putBlock(data, offset, mul(a1, k1), add(a3, k2), add(a2, k3), mul(a4, k4));
+        putBlock(data, offset + 8, mul(b1, k1), add(b3, k2), add(b2, k3), mul(b4, k4));
+        putBlock(data, offset + 16, mul(c1, k1), add(c3, k2), add(c2, k3), mul(c4, k4));
+        putBlock(data, offset + 24, mul(d1, k1), add(d3, k2), add(d2, k3), mul(d4, k4));
+    }
+
+    /**
+     * Sub-blocul de 16 biti de la pozitia pos.
+     */
+    private static int word(byte[] data, int pos) {
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    /**
+     * Reatasarea celor 4 sub-blocuri la pozitia pos.
+     */
+    private static void putBlock(byte[] data, int pos, int r0, int r1, int r2, int r3) {
+        data[pos] = (byte) (r0 >> 8);
+        data[pos + 1] = (byte) r0;
+        data[pos + 2] = (byte) (r1 >> 8);
+        data[pos + 3] = (byte) r1;
+        data[pos + 4] = (byte) (r2 >> 8);
+        data[pos + 5] = (byte) r2;
+        data[pos + 6] = (byte) (r3 >> 8);
+        data[pos + 7] = (byte) r3;
     }
 
     /**
@@ -152,11 +280,13 @@ public class IdeaCipher extends BlockCipher {
     /**
      * Inmulțirea in grupul multiplicativ (mod 2^16+1 = mod 0x10001).
      * Camp [0, 0xFFFF].
+     * Fara impartire: pentru p = lo + hi * 2^16, p mod (2^16+1) = lo - hi (+ 2^16+1 daca e negativ).
      */
     private static int mul(int x, int y) {
-        long m = (long) x * y;
-        if (m != 0) {
-            return (int) (m % 0x10001) & 0xFFFF;
+        int p = x * y; // Produsul incape in 32 de biti fara semn
+        if (p != 0) {
+            int r = (p & 0xFFFF) - (p >>> 16);
+            return (r + (r >>> 31)) & 0xFFFF;
         } else {
             if (x != 0 || y != 0) {
                 return (1 - x - y) & 0xFFFF;
@@ -0,0 +1,141 @@
+package com.tsd.idea_cipher.crypto;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Motor IDEA pe benzi (lanes): pana la LANES blocuri sunt transpuse in 4 tablouri de sub-blocuri de 16 biti
+ * (x1[i], x2[i], x3[i], x4[i] pentru blocul i), iar fiecare pas al rundei e o bucla simpla peste benzi, fara
+ * ramificatii.
+ * Inmultirea cu subcheia e calculata fara impartire si fara if, astfel incat compilatorul JIT (C2, superword) poate
+ * genera instructiuni SIMD pentru ea.
+ *
+ * Proiectul e compilat pentru Java 8, unde jdk.incubator.vector nu exista; motorul e folosit doar daca JVM-ul are
+ * vectorizarea automata activa (UseSuperWord) si poate fi fortat cu -Didea.engine=lanes / -Didea.engine=scalar.
+ */
+final class IdeaLanes {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdeaLanes.class);
+
+    static final int LANES = 64;                // Blocuri procesate odata
+    static final int MIN_BLOCKS = 16;           // Sub acest numar de blocuri se foloseste nucleul scalar
+    static final boolean ENABLED = detect();
+
+    private static final int BLOCK_SIZE = 8;
+    private static final int ROUNDS = 8;
+    private static final ThreadLocal<int[][]> LANE_BUFFERS = ThreadLocal.withInitial(() -> new int[6][LANES]);
+
+    private IdeaLanes() {
+    }
+
+    /**
+     * Cripteaza / decripteaza blocks blocuri (blocks <= LANES) de la pozitia offset.
+     */
+    static void crypt(int[] subKey, byte[] data, int offset, int blocks) {
+        int[][] lanes = LANE_BUFFERS.get();
+        int[] x1 = lanes[0], x2 = lanes[1], x3 = lanes[2], x4 = lanes[3], t7 = lanes[4], t9 = lanes[5];
+        // Transpune blocurile in benzi
+        for (int i = 0, p = offset; i < blocks; i++, p += BLOCK_SIZE) {
+            x1[i] = ((data[p] & 0xFF) << 8) | (data[p + 1] & 0xFF);
+            x2[i] = ((data[p + 2] & 0xFF) << 8) | (data[p + 3] & 0xFF);
+            x3[i] = ((data[p + 4] & 0xFF) << 8) | (data[p + 5] & 0xFF);
+            x4[i] = ((data[p + 6] & 0xFF) << 8) | (data[p + 7] & 0xFF);
+        }
+        int k = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            mul(x1, subKey[k++], blocks);                           // y1
+            add(x2, subKey[k++], blocks);                               // y2
+            add(x3, subKey[k++], blocks);                               // y3
+            mul(x4, subKey[k++], blocks);                           // y4
+            for (int i = 0; i < blocks; i++) {
+                t7[i] = x1[i] ^ x3[i];                                  // y5
+            }
+            mul(t7, subKey[k++], blocks);                           // y7
+            for (int i = 0; i < blocks; i++) {
+                t9[i] = ((x2[i] ^ x4[i]) + t7[i]) & 0xFFFF;             // y8
+            }
+            mul(t9, subKey[k++], blocks);                           // y9
+            for (int i = 0; i < blocks; i++) {
+                int y10 = (t7[i] + t9[i]) & 0xFFFF;                     // y10
+                x1[i] ^= t9[i];
+                x3[i] ^= t9[i];
+                x2[i] ^= y10;
+                x4[i] ^= y10;
+            }
+            // Sub-blocurile din mijloc sunt inversate
+            int[] t = x2;
+            x2 = x3;
+            x3 = t;
+        }
+        // Transformarea finala a iesirii
+        mul(x1, subKey[k++], blocks);
+        add(x3, subKey[k++], blocks);
+        add(x2, subKey[k++], blocks);
+        mul(x4, subKey[k], blocks);
+        // Reatasarea sub-blocurilor (x2 si x3 inversate)
+        for (int i = 0, p = offset; i < blocks; i++, p += BLOCK_SIZE) {
+            data[p] = (byte) (x1[i] >> 8);
+            data[p + 1] = (byte) x1[i];
+            data[p + 2] = (byte) (x3[i] >> 8);
+            data[p + 3] = (byte) x3[i];
+            data[p + 4] = (byte) (x2[i] >> 8);
+            data[p + 5] = (byte) x2[i];
+            data[p + 6] = (byte) (x4[i] >> 8);
+            data[p + 7] = (byte) x4[i];
+        }
+    }
+
+    /**
+     * Adunare mod 2^16 pe benzi.
+     */
+    private static void add(int[] x, int k, int n) {
+        for (int i = 0; i < n; i++) {
+            x[i] = (x[i] + k) & 0xFFFF;
+        }
+    }
+
+    /**
+     * Aceeasi inmultire ca IdeaCipher.mul, cu subcheia k, pe benzi: x[i] = x[i] * k mod (2^16+1).
+     * Pentru k != 0 cazul x = 0 (produs 0, rezultat 1 - k) e ales cu o masca, fara ramificatie.
+     */
+    private static void mul(int[] x, int k, int n) {
+        if (k == 0) {
+            for (int i = 0; i < n; i++) {
+                x[i] = x[i] == 0 ? 0 : (1 - x[i]) & 0xFFFF; // Rar: subcheie 0
+            }
+            return;
+        }
+        int zeroResult = (1 - k) & 0xFFFF;
+        for (int i = 0; i < n; i++) {
+            int v = x[i];
+            int p = v * k;
+            int r = (p & 0xFFFF) - (p >>> 16);
+            r = (r + (r >>> 31)) & 0xFFFF;
+            x[i] = r | (zeroResult & (((v | -v) >>> 31) - 1)); // Masca -1 daca v == 0
+        }
+    }
+
+    /**
+     * Motorul e activ daca e cerut explicit, sau implicit daca JIT-ul vectorizeaza bucle (UseSuperWord).
+     */
+    private static boolean detect() {
+        String engine = System.getProperty("idea.engine", "auto");
+        if (engine.equals("lanes")) {
+            return true;
+        } else if (engine.equals("scalar")) {
+            return false;
+        }
+        boolean enabled;
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            enabled = Boolean.parseBoolean(hotSpot.getVMOption("UseSuperWord").getValue());
+        } catch (RuntimeException | LinkageError e) {
+            enabled = false; // Alt JVM decat HotSpot
+        }
+        logger.debug("Lane engine " + (enabled ? "enabled" : "disabled"));
+        return enabled;
+    }
+}
@@ -0,0 +1,131 @@
+package com.tsd.idea_cipher.crypto;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU, limitat ca dimensiune, pentru subcheile IDEA (de criptare si de decriptare) expandate dintr-o cheie.
+ * Evita generateSubkeys / invertSubkey cand aceleasi chei sunt folosite repetat.
+ *
+ * Poate fi folosit din mai multe fire. Subcheile intoarse sunt partajate si nu trebuie modificate.
+ */
+public class KeyScheduleCache {
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static volatile KeyScheduleCache defaultCache;
+
+    private final int capacity;
+    private final Map<Key, int[]> schedules;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity numarul maxim de chei (o cheie pentru criptare si aceeasi pentru decriptare sunt separate)
+     */
+    public KeyScheduleCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+        // accessOrder = true: ordinea de iterare e cea a ultimei folosiri, primul e cel mai vechi
+        schedules = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                return size() > KeyScheduleCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Cache-ul comun, cu capacitatea data de proprietatea idea.keyCache.size (implicit 256).
+     */
+    public static KeyScheduleCache getDefault() {
+        if (defaultCache == null) {
+            synchronized (KeyScheduleCache.class) {
+                if (defaultCache == null) {
+                    defaultCache = new KeyScheduleCache(Integer.getInteger("idea.keyCache.size", DEFAULT_CAPACITY));
+                }
+            }
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Subcheile pentru cheia data, din cache sau generate si adaugate in cache.
+     *
+     * @param key     128-biti cheia utilizatorului
+     * @param encrypt true: subcheile de criptare / false: subcheile inversate, de decriptare
+     */
+    public int[] get(byte[] key, boolean encrypt) {
+        Key cacheKey = new Key(key.clone(), encrypt);
+        synchronized (this) {
+            int[] schedule = schedules.get(cacheKey);
+            if (schedule != null) {
+                hits++;
+                return schedule;
+            }
+            misses++;
+        }
+        // Generare in afara lock-ului; daca doua fire genereaza aceeasi cheie, rezultatul e acelasi
+        int[] schedule = IdeaCipher.schedule(cacheKey.key, encrypt);
+        synchronized (this) {
+            schedules.put(cacheKey, schedule);
+        }
+        return schedule;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return schedules.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Sterge toate subcheile si reseteaza contoarele.
+     */
+    public synchronized void clear() {
+        schedules.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Cheia din cache: materialul cheii si directia.
+     */
+    private static final class Key {
+        private final byte[] key;
+        private final boolean encrypt;
+        private final int hash;
+
+        Key(byte[] key, boolean encrypt) {
+            this.key = key;
+            this.encrypt = encrypt;
+            this.hash = 31 * Arrays.hashCode(key) + (encrypt ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return encrypt == other.encrypt && Arrays.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -59,6 +59,14 @@ public class GuiController {
     @FXML
     private RadioMenuItem ofbMenu;
     @FXML
+    private RadioButton ctr;
+    @FXML
+    private RadioMenuItem ctrMenu;
+    @FXML
+    private RadioButton ctrPmac;
+    @FXML
+    private RadioMenuItem ctrPmacMenu;
+    @FXML
     private PasswordField key;
     @FXML
     private Button run;
@@ -157,6 +165,12 @@ public class GuiController {
             case "OFB":
                 mode = OperationMode.Mode.OFB;
                 break;
+            case "CTR":
+                mode = OperationMode.Mode.CTR;
+                break;
+            case "CTR-PMAC":
+                mode = OperationMode.Mode.CTR_PMAC;
+                break;
         }
         resetStatus();
         // Creare task
@@ -201,7 +215,6 @@ public class GuiController {
     private void println(String msg) {
         status.appendText("\n" + msg);
     }
-df
     /**
      * Curatare box de stare
      */
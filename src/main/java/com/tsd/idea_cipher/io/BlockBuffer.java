@@ -0,0 +1,205 @@
+package com.tsd.idea_cipher.io;
+
+import com.tsd.idea_cipher.modes.DataLength;
+import com.tsd.idea_cipher.modes.OperationMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Bufferul comun al fluxurilor si canalelor: primeste octeti de intrare, ii cripteaza / decripteaza in blocuri
+ * intregi si pastreaza rezultatul pana e consumat.
+ *
+ * In buf: [pos, limit) iesire gata de consumat, [limit, count) intrare neprocesata.
+ * La criptare se adauga la final padding-ul si blocul cu lungimea datelor, ca in {@link
+ * com.tsd.idea_cipher.modes.FileProcessor}. La decriptare ultimele doua blocuri sunt retinute pana la sfarsitul
+ * intrarii: ultimul e lungimea datelor, iar cel dinaintea lui poate contine padding.
+ */
+final class BlockBuffer {
+
+    static final int BUF_SIZE = 0x10000; // 64KB de buffer
+    private static final int BLOCK_SIZE = DataLength.BLOCK_SIZE;
+    private static final int HOLD = 2 * BLOCK_SIZE; // Blocuri retinute la decriptare
+
+    private final OperationMode opMod;
+    private final boolean encrypt;
+    private final byte[] buf = new byte[BUF_SIZE + HOLD];
+    private int pos;
+    private int limit;
+    private int count;
+    private long cryptLen;      // Octeti procesati, fara padding si blocul cu lungimea
+    private boolean finished;
+
+    BlockBuffer(OperationMode opMod) {
+        this.opMod = opMod;
+        this.encrypt = opMod.isEncrypt();
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Octetii de iesire gata de consumat.
+     */
+    int available() {
+        return limit - pos;
+    }
+
+    /**
+     * Bufferul e plin de intrare neprocesata sau de iesire neconsumata.
+     */
+    boolean isFull() {
+        return count == buf.length;
+    }
+
+    /**
+     * Copiaza cat incape din b in intrare. Intoarce numarul de octeti copiati.
+     */
+    int put(byte[] b, int off, int len) {
+        compact();
+        int n = Math.min(len, buf.length - count);
+        System.arraycopy(b, off, buf, count, n);
+        count += n;
+        return n;
+    }
+
+    /**
+     * Copiaza cat incape din src in intrare.
+     */
+    int put(ByteBuffer src) {
+        compact();
+        int n = Math.min(src.remaining(), buf.length - count);
+        src.get(buf, count, n);
+        count += n;
+        return n;
+    }
+
+    /**
+     * Citeste din in cat incape in intrare. Intoarce -1 la sfarsitul intrarii.
+     */
+    int fill(InputStream in) throws IOException {
+        compact();
+        int n = in.read(buf, count, buf.length - count);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    /**
+     * Citeste din src cat incape in intrare. Intoarce -1 la sfarsitul intrarii.
+     */
+    int fill(ReadableByteChannel src) throws IOException {
+        compact();
+        int n = src.read(ByteBuffer.wrap(buf, count, buf.length - count));
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    /**
+     * Consuma cel mult len octeti de iesire in b.
+     */
+    int get(byte[] b, int off, int len) {
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Consuma cat incape din iesire in dst.
+     */
+    int get(ByteBuffer dst) {
+        int n = Math.min(dst.remaining(), limit - pos);
+        dst.put(buf, pos, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Sare peste cel mult n octeti de iesire.
+     */
+    int skip(long n) {
+        int skipped = (int) Math.min(n, limit - pos);
+        pos += skipped;
+        return skipped;
+    }
+
+    /**
+     * Consuma toata iesirea ca ByteBuffer (valabil pana la urmatoarea operatie pe buffer).
+     */
+    ByteBuffer drain() {
+        ByteBuffer out = ByteBuffer.wrap(buf, pos, limit - pos);
+        pos = limit;
+        return out;
+    }
+
+    /**
+     * Cripteaza / decripteaza blocurile intregi din intrare, cu exceptia celor retinute la decriptare.
+     */
+    void update() {
+        int blocks = (count - limit) / BLOCK_SIZE - (encrypt ? 0 : HOLD / BLOCK_SIZE);
+        if (blocks > 0) {
+            int n = blocks * BLOCK_SIZE;
+            opMod.crypt(buf, limit, n);
+            limit += n;
+            cryptLen += n;
+        }
+    }
+
+    /**
+     * Sfarsitul intrarii. La criptare adauga padding-ul si blocul cu lungimea datelor; la decriptare verifica
+     * lungimea si elimina padding-ul. Iesirea anterioara trebuie sa fi fost consumata.
+     */
+    void doFinal() throws IOException {
+        if (finished) {
+            return;
+        }
+        update();
+        compact();
+        int rest = count - limit;
+        if (encrypt) {
+            long dataLen = cryptLen + rest;
+            int end = limit + (rest + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            Arrays.fill(buf, count, end, (byte) 0); // Umple spatiul liber al ultimului bloc cu 0
+            DataLength.pack(dataLen, buf, end);
+            opMod.crypt(buf, limit, end + BLOCK_SIZE - limit);
+            limit = end + BLOCK_SIZE;
+        } else {
+            if (rest == 0) {
+                throw new IOException("Input is empty.");
+            } else if (rest % BLOCK_SIZE != 0) {
+                throw new IOException("Input size is not a multiple of " + BLOCK_SIZE + ".");
+            }
+            int data = rest - BLOCK_SIZE;
+            opMod.crypt(buf, limit, data);
+            cryptLen += data;
+            opMod.crypt(buf, limit + data, BLOCK_SIZE);
+            long dataSize = DataLength.unpack(buf, limit + data);
+            if (!DataLength.isValid(dataSize, cryptLen)) {
+                throw new IOException("Input is not a valid cryptogram (wrong data size)");
+            }
+            limit += data - (int) (cryptLen - dataSize);
+        }
+        count = limit;
+        finished = true;
+    }
+
+    /**
+     * Muta iesirea neconsumata si intrarea neprocesata la inceputul bufferului.
+     */
+    private void compact() {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, count - pos);
+            limit -= pos;
+            count -= pos;
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.tsd.idea_cipher.io;
+
+import com.tsd.idea_cipher.modes.OperationMode;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Flux de intrare care citeste din fluxul de baza si intoarce datele criptate / decriptate cu un mod de operare.
+ *
+ * Datele sunt procesate in blocuri intregi. La criptare, dupa date urmeaza padding-ul si blocul criptat cu lungimea
+ * datelor; la decriptare lungimea e verificata la sfarsitul fluxului de baza, iar padding-ul e eliminat. Daca blocul
+ * cu lungimea e invalid, ultima citire arunca IOException.
+ */
+public class IdeaInputStream extends FilterInputStream {
+
+    private final BlockBuffer buffer;
+    private final byte[] single = new byte[1];
+    private boolean closed;
+
+    /**
+     * @param in    fluxul de baza
+     * @param opMod modul de operare (criptare sau decriptare), folosit doar de acest flux
+     */
+    public IdeaInputStream(InputStream in, OperationMode opMod) {
+        super(in);
+        buffer = new BlockBuffer(opMod);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        return fill() ? buffer.get(b, off, len) : -1;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            skipped += buffer.skip(n - skipped);
+        }
+        return skipped;
+    }
+
+    /**
+     * Octetii procesati care pot fi cititi fara blocare.
+     */
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return buffer.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Mark/reset not supported.");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            in.close();
+        }
+    }
+
+    /**
+     * Citeste si proceseaza date pana cand exista iesire. Intoarce false la sfarsitul datelor.
+     */
+    private boolean fill() throws IOException {
+        while (buffer.available() == 0) {
+            if (buffer.isFinished()) {
+                return false;
+            }
+            if (buffer.fill(in) < 0) {
+                buffer.doFinal();
+            } else {
+                buffer.update();
+            }
+        }
+        return true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+}
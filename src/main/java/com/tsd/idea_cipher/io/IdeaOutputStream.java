@@ -0,0 +1,96 @@
+package com.tsd.idea_cipher.io;
+
+import com.tsd.idea_cipher.modes.OperationMode;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Flux de iesire care cripteaza / decripteaza datele scrise cu un mod de operare si le scrie in fluxul de baza.
+ *
+ * Datele sunt procesate in blocuri intregi. La criptare, {@link #close()} adauga padding-ul si blocul criptat cu
+ * lungimea datelor, ca la criptarea unui fisier; la decriptare, {@link #close()} verifica lungimea si elimina
+ * padding-ul. Rezultatul e identic cu cel obtinut cu {@link com.tsd.idea_cipher.modes.FileProcessor}, cu exceptia
+ * modurilor CTR si CTR_PMAC: nonce-ul lor (getNonce / setNonce) nu e scris sau citit de flux.
+ */
+public class IdeaOutputStream extends FilterOutputStream {
+
+    private final BlockBuffer buffer;
+    private final byte[] single = new byte[1];
+    private boolean closed;
+
+    /**
+     * @param out   fluxul de baza
+     * @param opMod modul de operare (criptare sau decriptare), folosit doar de acest flux
+     */
+    public IdeaOutputStream(OutputStream out, OperationMode opMod) {
+        super(out);
+        buffer = new BlockBuffer(opMod);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureOpen();
+        while (len > 0) {
+            int n = buffer.put(b, off, len);
+            off += n;
+            len -= n;
+            if (buffer.isFull()) {
+                buffer.update();
+                writeOut();
+            }
+        }
+    }
+
+    /**
+     * Scrie blocurile intregi procesate pana acum. Ultimul bloc incomplet (si la decriptare, ultimele doua blocuri)
+     * raman in buffer pana la {@link #close()}.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        buffer.update();
+        writeOut();
+        out.flush();
+    }
+
+    /**
+     * Termina criptarea / decriptarea si inchide fluxul de baza.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (OutputStream o = out) {
+            buffer.update();
+            writeOut();
+            buffer.doFinal();
+            writeOut();
+            o.flush();
+        }
+    }
+
+    private void writeOut() throws IOException {
+        ByteBuffer data = buffer.drain();
+        out.write(data.array(), data.position(), data.remaining());
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+}
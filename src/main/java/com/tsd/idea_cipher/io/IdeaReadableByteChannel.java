@@ -0,0 +1,62 @@
+package com.tsd.idea_cipher.io;
+
+import com.tsd.idea_cipher.modes.OperationMode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Canal care citeste din canalul de baza si intoarce datele criptate / decriptate cu un mod de operare.
+ * Acelasi format ca {@link IdeaInputStream}. Canalul de baza trebuie sa fie blocant.
+ */
+public class IdeaReadableByteChannel implements ReadableByteChannel {
+
+    private final ReadableByteChannel channel;
+    private final BlockBuffer buffer;
+    private boolean closed;
+
+    /**
+     * @param channel canalul de baza
+     * @param opMod   modul de operare (criptare sau decriptare), folosit doar de acest canal
+     */
+    public IdeaReadableByteChannel(ReadableByteChannel channel, OperationMode opMod) {
+        this.channel = channel;
+        buffer = new BlockBuffer(opMod);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        while (buffer.available() == 0) {
+            if (buffer.isFinished()) {
+                return -1;
+            }
+            if (buffer.fill(channel) < 0) {
+                buffer.doFinal();
+            } else {
+                buffer.update();
+            }
+        }
+        return buffer.get(dst);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            channel.close();
+        }
+    }
+}
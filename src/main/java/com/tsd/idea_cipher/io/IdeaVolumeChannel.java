@@ -0,0 +1,332 @@
+package com.tsd.idea_cipher.io;
+
+import com.tsd.idea_cipher.crypto.CrytoUtils;
+import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.modes.DataLength;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Volum criptat cu acces aleator: datele sunt impartite in sectoare de dimensiune fixa, criptate independent.
+ *
+ * Fiecare sector e criptat XEX cu IDEA: tweak-ul primului bloc e criptarea indexului sectorului, iar tweak-ul
+ * blocului urmator e cel anterior inmultit cu x in GF(2^64); C = E(P xor T) xor T. Citirea sau scrierea la orice
+ * pozitie decripteaza / recripteaza doar sectoarele atinse, deci costul nu depinde de dimensiunea volumului.
+ *
+ * Format: un sector de antet (magic, dimensiunea sectorului, lungimea datelor criptata), apoi sectoarele de date.
+ * Un sector format doar din zerouri (nescris inca, de exemplu intr-un fisier rar) e citit ca zerouri. Lungimea
+ * datelor e scrisa in antet la {@link #force(boolean)} si la {@link #close()}.
+ */
+public class IdeaVolumeChannel implements SeekableByteChannel {
+
+    public static final int DEFAULT_SECTOR_SIZE = 4096;
+    private static final byte[] MAGIC = "IDEAVOL1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCK_SIZE = 8;
+    private static final int BATCH_SIZE = 0x10000; // Octeti procesati odata
+    private static final long GF_POLY = 0x1B; // x^64 + x^4 + x^3 + x + 1
+
+    private final FileChannel channel;
+    private final IdeaCipher encrypt;
+    private final IdeaCipher decrypt;
+    private final int sectorSize;
+    private final byte[] buf;
+    private long size;
+    private long position;
+    private boolean dirty;
+    private boolean closed;
+
+    /**
+     * Deschide (sau creeaza) volumul din fisierul dat, pentru citire si scriere, cu sectoare de 4KB.
+     */
+    public static IdeaVolumeChannel open(Path path, String key) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            return new IdeaVolumeChannel(channel, key, DEFAULT_SECTOR_SIZE, null);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public IdeaVolumeChannel(FileChannel channel, String key) throws IOException {
+        this(channel, key, DEFAULT_SECTOR_SIZE, null);
+    }
+
+    /**
+     * @param channel    fisierul volumului; daca e gol, volumul e creat (canalul trebuie deschis si pentru scriere)
+     * @param sectorSize dimensiunea sectorului pentru un volum nou, multiplu de 8, cel putin 32; un volum existent
+     *                   foloseste dimensiunea din antet
+     * @param cache      cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public IdeaVolumeChannel(FileChannel channel, String key, int sectorSize, KeyScheduleCache cache)
+            throws IOException {
+        this.channel = channel;
+        encrypt = new IdeaCipher(key, true, cache);
+        decrypt = new IdeaCipher(key, false, cache);
+        if (channel.size() == 0) {
+            if (sectorSize < 4 * BLOCK_SIZE || sectorSize % BLOCK_SIZE != 0) {
+                throw new IllegalArgumentException("Invalid sector size: " + sectorSize);
+            }
+            this.sectorSize = sectorSize;
+            writeHeader();
+        } else {
+            this.sectorSize = readHeader();
+        }
+        buf = new byte[Math.max(1, BATCH_SIZE / this.sectorSize) * this.sectorSize];
+    }
+
+    public int getSectorSize() {
+        return sectorSize;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (!dst.hasRemaining()) {
+            return 0;
+        } else if (position >= size) {
+            return -1;
+        }
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            long sector = position / sectorSize;
+            int skip = (int) (position % sectorSize);
+            int len = (int) Math.min(Math.min(dst.remaining(), size - position), buf.length - skip);
+            int sectors = (skip + len + sectorSize - 1) / sectorSize;
+            load(sector, sectors, 0);
+            for (int i = 0; i < sectors; i++) {
+                decryptSector(sector + i, i * sectorSize);
+            }
+            dst.put(buf, skip, len);
+            position += len;
+            total += len;
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        int total = src.remaining();
+        while (src.hasRemaining()) {
+            long sector = position / sectorSize;
+            int skip = (int) (position % sectorSize);
+            int len = Math.min(src.remaining(), buf.length - skip);
+            int end = skip + len;
+            int sectors = (end + sectorSize - 1) / sectorSize;
+            // Doar sectoarele scrise partial sunt citite si decriptate
+            if (skip > 0 || (sectors == 1 && end < sectorSize)) {
+                loadPlain(sector, 0);
+            }
+            if (sectors > 1 && end % sectorSize != 0) {
+                loadPlain(sector + sectors - 1, (sectors - 1) * sectorSize);
+            }
+            src.get(buf, skip, len);
+            for (int i = 0; i < sectors; i++) {
+                encryptSector(sector + i, i * sectorSize);
+            }
+            writeFully(ByteBuffer.wrap(buf, 0, sectors * sectorSize), offset(sector));
+            position += len;
+            if (position > size) {
+                size = position;
+                dirty = true;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position.");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel truncate(long newSize) throws IOException {
+        ensureOpen();
+        if (newSize < 0) {
+            throw new IllegalArgumentException("Negative size.");
+        }
+        if (newSize < size) {
+            long sector = newSize / sectorSize;
+            int tail = (int) (newSize % sectorSize);
+            if (tail > 0) {
+                // Restul ultimului sector devine zero, ca o extindere ulterioara sa citeasca zerouri
+                loadPlain(sector, 0);
+                Arrays.fill(buf, tail, sectorSize, (byte) 0);
+                encryptSector(sector, 0);
+                writeFully(ByteBuffer.wrap(buf, 0, sectorSize), offset(sector));
+                sector++;
+            }
+            channel.truncate(offset(sector));
+            size = newSize;
+            writeHeader();
+        }
+        position = Math.min(position, newSize);
+        return this;
+    }
+
+    /**
+     * Scrie lungimea datelor in antet si forteaza scrierea pe disc.
+     */
+    public synchronized void force(boolean metaData) throws IOException {
+        ensureOpen();
+        if (dirty) {
+            writeHeader();
+        }
+        channel.force(metaData);
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                if (dirty) {
+                    writeHeader();
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private long offset(long sector) {
+        return (sector + 1) * sectorSize; // Primul sector e antetul
+    }
+
+    /**
+     * Citeste count sectoare in buf de la pozitia off; sectoarele de dupa sfarsitul fisierului sunt zerouri.
+     */
+    private void load(long sector, int count, int off) throws IOException {
+        ByteBuffer dst = ByteBuffer.wrap(buf, off, count * sectorSize);
+        long pos = offset(sector);
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, pos);
+            if (n < 0) {
+                Arrays.fill(buf, dst.position(), off + count * sectorSize, (byte) 0);
+                break;
+            }
+            pos += n;
+        }
+    }
+
+    private void loadPlain(long sector, int off) throws IOException {
+        load(sector, 1, off);
+        decryptSector(sector, off);
+    }
+
+    private void writeFully(ByteBuffer src, long pos) throws IOException {
+        while (src.hasRemaining()) {
+            pos += channel.write(src, pos);
+        }
+    }
+
+    private void encryptSector(long sector, int off) {
+        long t = tweak(sector);
+        xorTweaks(off, t);
+        encrypt.crypt(buf, off, sectorSize);
+        xorTweaks(off, t);
+    }
+
+    private void decryptSector(long sector, int off) {
+        for (int i = off; i < off + sectorSize; i++) {
+            if (buf[i] != 0) {
+                long t = tweak(sector);
+                xorTweaks(off, t);
+                decrypt.crypt(buf, off, sectorSize);
+                xorTweaks(off, t);
+                return;
+            }
+        }
+        // Sector nescris: ramane zero
+    }
+
+    /**
+     * Tweak-ul primului bloc din sector: criptarea indexului sectorului.
+     */
+    private long tweak(long sector) {
+        return encrypt.crypt(sector);
+    }
+
+    /**
+     * XOR intre blocurile sectorului si tweak-urile lor: t, t*x, t*x^2, ... in GF(2^64).
+     */
+    private void xorTweaks(int off, long t) {
+        for (int end = off + sectorSize; off < end; off += BLOCK_SIZE) {
+            CrytoUtils.putLong(buf, off, CrytoUtils.getLong(buf, off) ^ t);
+            t = (t << 1) ^ ((t >> 63) & GF_POLY);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        byte[] header = new byte[sectorSize];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        ByteBuffer.wrap(header).putInt(MAGIC.length, sectorSize);
+        DataLength.pack(size, header, 2 * BLOCK_SIZE);
+        encrypt.crypt(header, 2 * BLOCK_SIZE);
+        writeFully(ByteBuffer.wrap(header, 0, 3 * BLOCK_SIZE), 0);
+        if (channel.size() < sectorSize) {
+            writeFully(ByteBuffer.wrap(header, 3 * BLOCK_SIZE, sectorSize - 3 * BLOCK_SIZE), 3 * BLOCK_SIZE);
+        }
+        dirty = false;
+    }
+
+    private int readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(3 * BLOCK_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // Citeste antetul complet
+        }
+        byte[] b = header.array();
+        if (header.hasRemaining() || !Arrays.equals(Arrays.copyOf(b, MAGIC.length), MAGIC)) {
+            throw new IOException("Not an encrypted volume.");
+        }
+        int sectors = header.getInt(MAGIC.length);
+        if (sectors < 4 * BLOCK_SIZE || sectors % BLOCK_SIZE != 0) {
+            throw new IOException("Invalid sector size: " + sectors);
+        }
+        decrypt.crypt(b, 2 * BLOCK_SIZE);
+        size = DataLength.unpack(b, 2 * BLOCK_SIZE);
+        if (size < 0) {
+            throw new IOException("Wrong key or corrupted volume.");
+        }
+        return sectors;
+    }
+}
@@ -0,0 +1,75 @@
+package com.tsd.idea_cipher.io;
+
+import com.tsd.idea_cipher.modes.OperationMode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Canal care cripteaza / decripteaza datele scrise cu un mod de operare si le scrie in canalul de baza.
+ * Acelasi format ca {@link IdeaOutputStream}: {@link #close()} termina datele. Canalul de baza trebuie sa fie blocant.
+ */
+public class IdeaWritableByteChannel implements WritableByteChannel {
+
+    private final WritableByteChannel channel;
+    private final BlockBuffer buffer;
+    private boolean closed;
+
+    /**
+     * @param channel canalul de baza
+     * @param opMod   modul de operare (criptare sau decriptare), folosit doar de acest canal
+     */
+    public IdeaWritableByteChannel(WritableByteChannel channel, OperationMode opMod) {
+        this.channel = channel;
+        buffer = new BlockBuffer(opMod);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        int written = 0;
+        while (src.hasRemaining()) {
+            written += buffer.put(src);
+            if (buffer.isFull()) {
+                buffer.update();
+                writeOut();
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Termina criptarea / decriptarea si inchide canalul de baza.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            buffer.update();
+            writeOut();
+            buffer.doFinal();
+            writeOut();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeOut() throws IOException {
+        ByteBuffer data = buffer.drain();
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
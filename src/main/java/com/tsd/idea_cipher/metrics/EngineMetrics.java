@@ -0,0 +1,248 @@
+package com.tsd.idea_cipher.metrics;
+
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metricile motoarelor de criptare: octeti si blocuri procesate, histograme de latenta pe etape (citire, criptare,
+ * scriere, generarea subcheilor), adancimea cozii motoarelor paralele, rata de reusita a cache-ului de subchei si
+ * timpul petrecut in GC. Sunt expuse prin JMX ({@link EngineMetricsMBean}) si prin evenimente JFR.
+ *
+ * Etapele sunt masurate pe bucati (implicit 2MB), nu pe blocuri, deci costul masurarii e neglijabil.
+ */
+public final class EngineMetrics implements EngineMetricsMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(EngineMetrics.class);
+    public static final String OBJECT_NAME = "com.tsd.idea_cipher:type=EngineMetrics";
+    private static final int BLOCK_SIZE = 8;
+    private static volatile EngineMetrics defaultMetrics;
+
+    /**
+     * Etapele masurate ale procesarii.
+     */
+    public enum Stage {
+        KEY_SETUP, READ, CRYPT, WRITE
+    }
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final LongAdder files = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+    private volatile long baseHits; // Valorile cache-ului si ale GC-ului la ultimul reset
+    private volatile long baseMisses;
+    private volatile long baseGcMillis;
+
+    public EngineMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+        reset();
+    }
+
+    /**
+     * Metricile comune, folosite de motoare; la prima folosire sunt inregistrate in serverul MBean al platformei.
+     */
+    public static EngineMetrics getDefault() {
+        if (defaultMetrics == null) {
+            synchronized (EngineMetrics.class) {
+                if (defaultMetrics == null) {
+                    EngineMetrics metrics = new EngineMetrics();
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                                new ObjectName(OBJECT_NAME));
+                    } catch (Exception | LinkageError e) {
+                        logger.debug("Unable to register MBean: " + e);
+                    }
+                    defaultMetrics = metrics;
+                }
+            }
+        }
+        return defaultMetrics;
+    }
+
+    /**
+     * Inregistreaza o etapa inceputa la startNanos (System.nanoTime) si terminata acum.
+     */
+    public void record(Stage stage, long startNanos, long bytes) {
+        long nanos = System.nanoTime() - startNanos;
+        stages.get(stage).record(nanos, bytes);
+        JfrEvents.stage(stage.name(), bytes, nanos);
+    }
+
+    /**
+     * Un fisier procesat cu succes, in nanos nanosecunde.
+     */
+    public void fileDone(String file, String mode, boolean encrypt, long bytes, long nanos) {
+        files.increment();
+        JfrEvents.file(file, mode, encrypt, bytes, nanos);
+    }
+
+    public void fileFailed() {
+        failed.increment();
+    }
+
+    /**
+     * Adancimea curenta a cozii unui motor paralel (bucati citite care asteapta criptarea sau scrierea).
+     */
+    public void queueDepth(int depth) {
+        queueDepth.set(depth);
+        maxQueueDepth.accumulate(depth);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stages.get(stage);
+    }
+
+    @Override
+    public long getBytes() {
+        return stages.get(Stage.CRYPT).getBytes();
+    }
+
+    @Override
+    public long getBlocks() {
+        return getBytes() / BLOCK_SIZE;
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getFailedFiles() {
+        return failed.sum();
+    }
+
+    @Override
+    public double getBlocksPerSecond() {
+        long nanos = stages.get(Stage.CRYPT).getTotalNanos();
+        return nanos > 0 ? getBlocks() * 1e9 / nanos : 0;
+    }
+
+    @Override
+    public double getMegabytesPerSecond() {
+        long nanos = stages.get(Stage.CRYPT).getTotalNanos();
+        return nanos > 0 ? getBytes() * 1e9 / nanos / (1024 * 1024) : 0;
+    }
+
+    @Override
+    public double getReadMeanMicros() {
+        return stages.get(Stage.READ).getMeanNanos() / 1000;
+    }
+
+    @Override
+    public long getReadP99Micros() {
+        return stages.get(Stage.READ).getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public double getCryptMeanMicros() {
+        return stages.get(Stage.CRYPT).getMeanNanos() / 1000;
+    }
+
+    @Override
+    public long getCryptP99Micros() {
+        return stages.get(Stage.CRYPT).getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public double getWriteMeanMicros() {
+        return stages.get(Stage.WRITE).getMeanNanos() / 1000;
+    }
+
+    @Override
+    public long getWriteP99Micros() {
+        return stages.get(Stage.WRITE).getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public double getKeySetupMeanMicros() {
+        return stages.get(Stage.KEY_SETUP).getMeanNanos() / 1000;
+    }
+
+    @Override
+    public long getKeySetupP99Micros() {
+        return stages.get(Stage.KEY_SETUP).getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return (int) maxQueueDepth.get();
+    }
+
+    /**
+     * Pentru cache-ul comun de subchei ({@link KeyScheduleCache#getDefault()}), de la ultimul reset.
+     */
+    @Override
+    public long getKeyCacheHits() {
+        return KeyScheduleCache.getDefault().getHits() - baseHits;
+    }
+
+    @Override
+    public long getKeyCacheMisses() {
+        return KeyScheduleCache.getDefault().getMisses() - baseMisses;
+    }
+
+    @Override
+    public double getKeyCacheHitRate() {
+        long hits = getKeyCacheHits();
+        long total = hits + getKeyCacheMisses();
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    /**
+     * Timpul petrecut in GC de toate colectoarele, de la ultimul reset.
+     */
+    @Override
+    public long getGcMillis() {
+        return gcMillis() - baseGcMillis;
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : stages.values()) {
+            histogram.reset();
+        }
+        files.reset();
+        failed.reset();
+        queueDepth.set(0);
+        maxQueueDepth.reset();
+        KeyScheduleCache cache = KeyScheduleCache.getDefault();
+        baseHits = cache.getHits();
+        baseMisses = cache.getMisses();
+        baseGcMillis = gcMillis();
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files (%d failed), %d bytes, %.1f MB/s crypt; mean read %.0fus, crypt %.0fus, "
+                        + "write %.0fus, key setup %.0fus; max queue %d; key cache hit rate %.2f; GC %dms",
+                getFiles(), getFailedFiles(), getBytes(), getMegabytesPerSecond(), getReadMeanMicros(),
+                getCryptMeanMicros(), getWriteMeanMicros(), getKeySetupMeanMicros(), getMaxQueueDepth(),
+                getKeyCacheHitRate(), getGcMillis());
+    }
+}
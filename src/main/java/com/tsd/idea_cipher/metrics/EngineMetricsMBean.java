@@ -0,0 +1,50 @@
+package com.tsd.idea_cipher.metrics;
+
+/**
+ * Interfata JMX pentru {@link EngineMetrics}, inregistrata ca com.tsd.idea_cipher:type=EngineMetrics.
+ * Duratele sunt in microsecunde, debitele calculate din timpul de criptare (fara citire / scriere).
+ */
+public interface EngineMetricsMBean {
+
+    long getBytes();
+
+    long getBlocks();
+
+    long getFiles();
+
+    long getFailedFiles();
+
+    double getBlocksPerSecond();
+
+    double getMegabytesPerSecond();
+
+    double getReadMeanMicros();
+
+    long getReadP99Micros();
+
+    double getCryptMeanMicros();
+
+    long getCryptP99Micros();
+
+    double getWriteMeanMicros();
+
+    long getWriteP99Micros();
+
+    double getKeySetupMeanMicros();
+
+    long getKeySetupP99Micros();
+
+    int getQueueDepth();
+
+    int getMaxQueueDepth();
+
+    long getKeyCacheHits();
+
+    long getKeyCacheMisses();
+
+    double getKeyCacheHitRate();
+
+    long getGcMillis();
+
+    void reset();
+}
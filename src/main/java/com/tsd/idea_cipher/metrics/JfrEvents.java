@@ -0,0 +1,118 @@
+package com.tsd.idea_cipher.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Evenimente JFR (Java Flight Recorder) pentru etapele si fisierele procesate.
+ *
+ * Proiectul e compilat pentru Java 8, unde jdk.jfr poate lipsi, deci tipurile de evenimente sunt create la rulare
+ * cu jdk.jfr.EventFactory, prin reflexie. Daca JFR nu exista, evenimentele sunt ignorate. Un eveniment e creat doar
+ * daca o inregistrare JFR activa il cere (EventType.isEnabled), altfel costul e o singura verificare.
+ */
+final class JfrEvents {
+
+    private static final Logger logger = LoggerFactory.getLogger(JfrEvents.class);
+
+    static final String STAGE_EVENT = "com.tsd.idea_cipher.Stage";
+    static final String FILE_EVENT = "com.tsd.idea_cipher.File";
+
+    private static final Type STAGE = create(STAGE_EVENT, "IDEA Stage", "Read, crypt, write or key setup of a chunk",
+            new String[]{"stage", "bytes", "elapsed"}, new Class<?>[]{String.class, long.class, long.class});
+    private static final Type FILE = create(FILE_EVENT, "IDEA File", "A file encrypted or decrypted",
+            new String[]{"file", "mode", "encrypt", "bytes", "elapsed"},
+            new Class<?>[]{String.class, String.class, boolean.class, long.class, long.class});
+
+    private JfrEvents() {
+    }
+
+    static boolean isAvailable() {
+        return STAGE != null;
+    }
+
+    static void stage(String stage, long bytes, long nanos) {
+        if (STAGE != null) {
+            STAGE.commit(stage, bytes, nanos);
+        }
+    }
+
+    static void file(String file, String mode, boolean encrypt, long bytes, long nanos) {
+        if (FILE != null) {
+            FILE.commit(file, mode, encrypt, bytes, nanos);
+        }
+    }
+
+    /**
+     * Un tip de eveniment creat cu EventFactory; campul "elapsed" e marcat @Timespan(NANOSECONDS).
+     */
+    private static final class Type {
+        private final Object factory;
+        private final Object eventType;
+        private final Method isEnabled;
+        private final Method newEvent;
+        private final Method set;
+        private final Method commit;
+
+        Type(Object factory) throws ReflectiveOperationException {
+            this.factory = factory;
+            eventType = factory.getClass().getMethod("getEventType").invoke(factory);
+            isEnabled = eventType.getClass().getMethod("isEnabled");
+            newEvent = factory.getClass().getMethod("newEvent");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+        }
+
+        void commit(Object... values) {
+            try {
+                if (!(Boolean) isEnabled.invoke(eventType)) {
+                    return;
+                }
+                Object event = newEvent.invoke(factory);
+                for (int i = 0; i < values.length; i++) {
+                    set.invoke(event, i, values[i]);
+                }
+                commit.invoke(event);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.debug("JFR event failed: " + e);
+            }
+        }
+    }
+
+    private static Type create(String name, String label, String description, String[] fields, Class<?>[] types) {
+        try {
+            Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+            Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Constructor<?> field = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> eventAnnotations = new ArrayList<>();
+            eventAnnotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"), name));
+            eventAnnotations.add(annotation.newInstance(Class.forName("jdk.jfr.Label"), label));
+            eventAnnotations.add(annotation.newInstance(Class.forName("jdk.jfr.Description"), description));
+            eventAnnotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"),
+                    new String[]{"IDEA Cipher"}));
+            eventAnnotations.add(annotation.newInstance(Class.forName("jdk.jfr.StackTrace"), false)); // Cost redus
+            List<Object> eventFields = new ArrayList<>();
+            for (int i = 0; i < fields.length; i++) {
+                List<Object> fieldAnnotations = fields[i].equals("elapsed")
+                        ? Collections.singletonList(annotation.newInstance(Class.forName("jdk.jfr.Timespan"),
+                        "NANOSECONDS"))
+                        : Collections.emptyList();
+                eventFields.add(field.newInstance(types[i], fields[i], fieldAnnotations));
+            }
+            Object factory = Class.forName("jdk.jfr.EventFactory").getMethod("create", List.class, List.class)
+                    .invoke(null, eventAnnotations, eventFields);
+            return new Type(factory);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            logger.debug("JFR events not available: " + e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.tsd.idea_cipher.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latente, cu intervale puteri ale lui 2 (in nanosecunde): intervalul i contine valorile din
+ * [2^i, 2^(i+1)), iar intervalul 0 si valoarea 0. Inregistrarea e fara lock si poate fi facuta din mai multe fire;
+ * percentilele sunt aproximate cu limita superioara a intervalului.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Inregistreaza o durata si octetii procesati in acest timp.
+     */
+    public void record(long nanos, long bytes) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(nanos == 0 ? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros(nanos));
+        count.increment();
+        total.add(nanos);
+        this.bytes.add(bytes);
+        max.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n > 0 ? (double) total.sum() / n : 0;
+    }
+
+    /**
+     * Percentila p (0 - 100), aproximata: limita superioara a intervalului in care se afla.
+     */
+    public long getPercentileNanos(double p) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * p / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(i < BUCKETS - 2 ? 1L << (i + 1) : Long.MAX_VALUE, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        bytes.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,291 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Cripteaza / decripteaza multe fisiere (de exemplu un arbore de directoare) cu un numar limitat de fire.
+ *
+ * Fiecare fisier e o sarcina separata, procesata secvential de {@link FileProcessor}; paralelismul vine din
+ * procesarea mai multor fisiere odata. Sarcinile folosesc acelasi cache de subchei (cheia e expandata o singura data)
+ * si aceleasi buffere. Pe Java 21+ sarcinile ruleaza pe fire virtuale, pe Java 8 intr-un pool fix; in ambele cazuri
+ * cel mult workers fisiere sunt procesate odata, iar parcurgerea directorului asteapta cand toate firele sunt ocupate.
+ */
+public class BatchProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchProcessor.class);
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    private String key;
+    private boolean encrypt;
+    private OperationMode.Mode mode;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int segmentSize = 8;
+    private int chunkSize;
+    private int compressionLevel;
+    private boolean incremental;
+    private KeyScheduleCache cache = KeyScheduleCache.getDefault();
+    private Listener listener = NO_LISTENER;
+
+    /**
+     * Un fisier de procesat.
+     */
+    public static final class Job {
+        private final Path input;
+        private final Path output;
+
+        public Job(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+    }
+
+    /**
+     * Primeste rezultatul fiecarui fisier, din firele de lucru.
+     */
+    public interface Listener {
+        /**
+         * @param error null daca fisierul a fost procesat, altfel eroarea
+         */
+        void fileDone(Job job, Exception error);
+    }
+
+    private static final Listener NO_LISTENER = (job, error) -> {
+    };
+
+    /**
+     * Rezultatul agregat: fisiere, octeti si timp.
+     */
+    public static final class Result {
+        private final int files;
+        private final int failed;
+        private final long bytes;
+        private final long nanos;
+
+        Result(int files, int failed, long bytes, long nanos) {
+            this.files = files;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Fisierele procesate cu succes.
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Octetii de intrare ai fisierelor procesate cu succes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getFilesPerSecond() {
+            return nanos > 0 ? files / (nanos / 1e9) : 0;
+        }
+
+        public double getMegabytesPerSecond() {
+            return nanos > 0 ? bytes / (1024.0 * 1024.0) / (nanos / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d file(s)%s, %.2f MB in %.3f s (%.2f MB/s, %.1f files/s)",
+                    files, failed > 0 ? ", " + failed + " failed" : "", bytes / (1024.0 * 1024.0), nanos / 1e9,
+                    getMegabytesPerSecond(), getFilesPerSecond());
+        }
+    }
+
+    public BatchProcessor(String key, boolean encrypt, OperationMode.Mode mode) {
+        this.key = key;
+        this.encrypt = encrypt;
+        this.mode = mode;
+    }
+
+    /**
+     * Numarul maxim de fisiere procesate odata (implicit numarul de procesoare).
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed.");
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Dimensiunea segmentului pentru modul CFB, in octeti: 1, 2, 4 sau 8 (implicit, CFB-64).
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Dimensiunea bucatilor pentru containerul CBC pe bucati (0, implicit: formatul obisnuit).
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Nivelul compresiei inainte de criptare, 1 ... 9 sau -1 (0, implicit: fara compresie).
+     */
+    public void setCompressionLevel(int level) {
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Criptare incrementala: doar bucatile modificate ale containerelor CBC existente sunt rescrise.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Cache-ul de subchei comun sarcinilor (implicit {@link KeyScheduleCache#getDefault()}).
+     */
+    public void setKeyScheduleCache(KeyScheduleCache cache) {
+        this.cache = cache;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    /**
+     * Proceseaza toate fisierele din inputDir (recursiv) in outputDir, cu aceeasi structura de directoare.
+     *
+     * @param rename numele fisierului de iesire pentru un nume de fisier de intrare (de exemplu, adauga o extensie)
+     */
+    public Result processTree(Path inputDir, Path outputDir, UnaryOperator<String> rename) throws IOException {
+        try (Stream<Path> files = Files.walk(inputDir)) {
+            Iterator<Job> jobs = files.filter(Files::isRegularFile).map(file -> {
+                Path relative = inputDir.relativize(file);
+                Path name = relative.getFileSystem().getPath(rename.apply(relative.getFileName().toString()));
+                Path parent = relative.getParent();
+                return new Job(file, outputDir.resolve(parent != null ? parent.resolve(name) : name));
+            }).iterator();
+            return process(jobs);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // Eroare la parcurgerea directorului
+        }
+    }
+
+    /**
+     * Proceseaza fisierele date. Erorile unui fisier nu opresc celelalte fisiere; sunt raportate listener-ului si
+     * numarate in rezultat.
+     */
+    public Result process(Iterable<Job> jobs) throws IOException {
+        return process(jobs.iterator());
+    }
+
+    private Result process(Iterator<Job> jobs) throws IOException {
+        BufferPool buffers = new BufferPool(FileProcessor.BUF_SIZE, workers);
+        Semaphore slots = new Semaphore(workers);
+        AtomicInteger files = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        long t0 = System.nanoTime();
+        ExecutorService executor = newExecutor();
+        try {
+            while (jobs.hasNext()) {
+                Job job = jobs.next();
+                slots.acquire();
+                executor.execute(() -> {
+                    try {
+                        long size = Files.size(job.input);
+                        crypt(job, buffers);
+                        bytes.addAndGet(size);
+                        files.incrementAndGet();
+                        listener.fileDone(job, null);
+                    } catch (IOException | RuntimeException e) {
+                        logger.debug("Failed: " + job.input + ": " + e);
+                        failed.incrementAndGet();
+                        listener.fileDone(job, e);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquire(workers); // Asteapta sarcinile ramase
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing files.");
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(files.get(), failed.get(), bytes.get(), System.nanoTime() - t0);
+    }
+
+    private void crypt(Job job, BufferPool buffers) throws IOException {
+        Path parent = job.output.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileProcessor processor = new FileProcessor(job.input.toString(), job.output.toString(), key, encrypt, mode);
+        // Un singur fir pe fisier: firele sunt deja impartite intre fisiere
+        processor.setThreads(1);
+        processor.setOverlapIo(false);
+        processor.setSegmentSize(segmentSize);
+        processor.setChunkSize(chunkSize);
+        processor.setCompressionLevel(compressionLevel);
+        processor.setIncremental(incremental);
+        processor.setKeyScheduleCache(cache);
+        processor.setBufferPool(buffers);
+        processor.cryptFile();
+    }
+
+    /**
+     * Fire virtuale daca exista (Java 21+), altfel un pool fix de workers fire.
+     */
+    private ExecutorService newExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.debug("Batch on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            int id = POOL_ID.incrementAndGet();
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(workers, r -> {
+                Thread t = new Thread(r, "idea-batch-" + id + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.tsd.idea_cipher.modes;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Buffere refolosite intre fisiere: un fisier mic nu mai aloca un buffer de 2MB de fiecare data.
+ * Pastreaza cel mult capacity buffere libere; peste aceasta limita bufferele eliberate sunt lasate GC-ului.
+ */
+class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+
+    BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Un buffer liber sau unul nou, cu pozitia 0 si limita egala cu capacitatea.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buf = free.poll();
+        if (buf == null) {
+            return ByteBuffer.allocate(bufferSize);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    void release(ByteBuffer buf) {
+        if (buf.capacity() == bufferSize) {
+            free.offer(buf);
+        }
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+}
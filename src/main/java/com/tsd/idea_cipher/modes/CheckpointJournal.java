@@ -0,0 +1,162 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.modes.algorithms.CTR;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Jurnalul punctelor de control ale unei criptari / decriptari, intr-un fisier langa iesire (output.ckpt).
+ *
+ * Un punct de control contine pozitia pana la care iesirea e scrisa si sincronizata pe disc si starea modului de
+ * operare in acel punct. Jurnalul e scris intr-un fisier temporar si inlocuit prin redenumire atomica, deci dupa o
+ * oprire brusca ramane ultimul punct de control complet. Starea e criptata (CTR, cu un nonce nou la fiecare punct),
+ * pentru ca registrul OFB e chiar fluxul de cheie.
+ *
+ * Jurnalul e legat de fisierul de intrare (dimensiune, data modificarii) si de parametrii procesarii; daca acestia
+ * s-au schimbat sau cheia e alta, jurnalul e ignorat si procesarea incepe de la zero.
+ */
+final class CheckpointJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointJournal.class);
+    static final String EXT = ".ckpt";
+    private static final byte[] MAGIC = "IDEACKP1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHECK = "IDEACKPT".getBytes(StandardCharsets.US_ASCII); // Verificarea cheii
+    private static final int BLOCK_SIZE = 8;
+    private static final int HEADER_SIZE = 40;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path path;
+    private final Path tmp;
+    private final long inputSize;
+    private final long inputTime;
+    private final int params;
+    private final String key;
+    private final KeyScheduleCache cache;
+
+    /**
+     * @param output fisierul de iesire; jurnalul e output.ckpt
+     * @param input  fisierul de intrare
+     * @param params parametrii procesarii care schimba rezultatul (mod, criptare / decriptare, segment CFB)
+     */
+    CheckpointJournal(Path output, Path input, int params, String key, KeyScheduleCache cache) throws IOException {
+        path = pathFor(output);
+        tmp = Paths.get(path + ".tmp");
+        inputSize = Files.size(input);
+        inputTime = Files.getLastModifiedTime(input).toMillis();
+        this.params = params;
+        this.key = key;
+        this.cache = cache;
+    }
+
+    static Path pathFor(Path output) {
+        return Paths.get(output + EXT);
+    }
+
+    /**
+     * Ultimul punct de control: restaureaza starea modului si intoarce pozitia lui, sau -1 daca nu exista un punct de
+     * control valid pentru aceeasi intrare si aceeasi cheie.
+     */
+    long load(OperationMode opMod) throws IOException {
+        byte[] b;
+        try {
+            b = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(b);
+        if (b.length < HEADER_SIZE + Long.BYTES || !Arrays.equals(Arrays.copyOf(b, MAGIC.length), MAGIC)) {
+            logger.debug("Ignoring invalid checkpoint journal " + path);
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b, 0, b.length - Long.BYTES);
+        int payloadLen = buf.getInt(36);
+        if (buf.getLong(b.length - Long.BYTES) != crc.getValue() || payloadLen != b.length - HEADER_SIZE - Long.BYTES
+                || payloadLen < 2 * BLOCK_SIZE || payloadLen % BLOCK_SIZE != 0) {
+            logger.debug("Ignoring damaged checkpoint journal " + path);
+            return -1;
+        }
+        if (buf.getLong(8) != inputSize || buf.getLong(16) != inputTime || buf.getInt(24) != params) {
+            logger.debug("Ignoring checkpoint journal of a different job " + path);
+            return -1;
+        }
+        byte[] payload = Arrays.copyOfRange(b, HEADER_SIZE, HEADER_SIZE + payloadLen);
+        crypt(payload, buf.getLong(28));
+        ByteBuffer p = ByteBuffer.wrap(payload);
+        if (!Arrays.equals(Arrays.copyOf(payload, CHECK.length), CHECK)) {
+            logger.debug("Ignoring checkpoint journal written with a different key " + path);
+            return -1;
+        }
+        long offset = p.getLong(BLOCK_SIZE);
+        int stateLen = p.getInt(2 * BLOCK_SIZE);
+        int statePos = 2 * BLOCK_SIZE + Integer.BYTES;
+        if (offset < 0 || offset > inputSize || stateLen < 0 || statePos + stateLen > payloadLen) {
+            return -1;
+        }
+        opMod.setState(Arrays.copyOfRange(payload, statePos, statePos + stateLen));
+        return offset;
+    }
+
+    /**
+     * Inregistreaza un punct de control: iesirea e scrisa pana la offset (si trebuie sa fie deja sincronizata), iar
+     * modul e in starea de dupa offset octeti.
+     */
+    void commit(long offset, OperationMode opMod) throws IOException {
+        byte[] state = opMod.getState();
+        int len = 2 * BLOCK_SIZE + Integer.BYTES + state.length;
+        ByteBuffer payload = ByteBuffer.allocate((len + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+        payload.put(CHECK).putLong(offset).putInt(state.length).put(state);
+        long nonce = RANDOM.nextLong();
+        crypt(payload.array(), nonce);
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + payload.capacity() + Long.BYTES);
+        buf.put(MAGIC).putLong(inputSize).putLong(inputTime).putInt(params).putLong(nonce)
+                .putInt(payload.capacity()).put(payload.array());
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putLong(crc.getValue());
+        buf.flip();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Sterge jurnalul, dupa terminarea procesarii.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(tmp);
+        Files.deleteIfExists(path);
+    }
+
+    private void crypt(byte[] payload, long nonce) {
+        CTR ctr = new CTR(true, key, cache);
+        ctr.setNonce(nonce);
+        ctr.crypt(payload, 0, payload.length);
+    }
+}
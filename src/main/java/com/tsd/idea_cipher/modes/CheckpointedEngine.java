@@ -0,0 +1,50 @@
+package com.tsd.idea_cipher.modes;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.function.LongConsumer;
+
+/**
+ * Procesare pe segmente de interval octeti, cu {@link DataEngine}, si puncte de control in {@link CheckpointJournal}.
+ * Dupa fiecare segment (mai putin ultimul, urmat de lungimea datelor) iesirea e sincronizata pe disc si punctul de
+ * control e scris in jurnal.
+ */
+class CheckpointedEngine {
+
+    private static final int BLOCK_SIZE = 8;
+
+    private final DataEngine data;
+    private final long interval;
+
+    /**
+     * @param data     procesarea fiecarui segment
+     * @param interval octeti intre doua puncte de control (multiplu de dimensiunea blocului)
+     */
+    CheckpointedEngine(DataEngine data, long interval) {
+        this.data = data;
+        this.interval = interval;
+    }
+
+    /**
+     * Proceseaza datele de la pozitia start (punctul de control incarcat, 0 la inceput) pana la inDataLen.
+     *
+     * @param progress primeste numarul de octeti procesati de la inceputul datelor
+     */
+    void process(FileChannel inChannel, long inDataLen, FileChannel outChannel, long outDataLen, OperationMode opMod,
+                 CheckpointJournal journal, long start, LongConsumer progress) throws IOException {
+        inChannel.position(start);
+        outChannel.position(start);
+        for (long pos = start; pos < inDataLen; ) {
+            long n = Math.min(inDataLen - pos, interval);
+            long end = pos + (n + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            long segmentStart = pos;
+            data.process(inChannel, n, outChannel, Math.min(outDataLen, end) - pos, opMod, pos / BLOCK_SIZE,
+                    done -> progress.accept(segmentStart + done));
+            if (end < inDataLen) {
+                outChannel.force(false);
+                journal.commit(end, opMod);
+            }
+            pos = end;
+        }
+    }
+}
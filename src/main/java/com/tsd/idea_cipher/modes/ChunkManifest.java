@@ -0,0 +1,180 @@
+package com.tsd.idea_cipher.modes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Manifestul criptarii incrementale, langa containerul CBC pe bucati (output.manifest): amprentele datelor fiecarei
+ * bucati, la ultima criptare. O bucata e criptata si scrisa din nou doar daca amprenta ei s-a schimbat.
+ *
+ * Amprentele sunt HMAC-SHA256 (trunchiate la 16 octeti) cu o cheie derivata din cheia de criptare, deci nu permit
+ * verificarea unor date ghicite fara cheie. Manifestul retine si un rezumat al IV-urilor containerului, ca sa fie
+ * folosit doar cu containerul pentru care a fost scris.
+ */
+final class ChunkManifest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkManifest.class);
+    static final String EXT = ".manifest";
+    static final int FINGERPRINT_SIZE = 16;
+    private static final byte[] MAGIC = "IDEAMAN1".getBytes(StandardCharsets.US_ASCII);
+    private static final int DIGEST_SIZE = 32;
+    private static final int HEADER_SIZE = 56; // Magic, dimensiunea bucatii, numarul bucatilor, lungimea, rezumatul
+
+    private final int chunkSize;
+    private final long dataLength;
+    private final byte[] ivDigest;
+    private final byte[] fingerprints;
+
+    ChunkManifest(ChunkedContainer container, byte[] fingerprints) {
+        this(container.getChunkSize(), container.getDataLength(), digest(container.ivs()), fingerprints);
+    }
+
+    private ChunkManifest(int chunkSize, long dataLength, byte[] ivDigest, byte[] fingerprints) {
+        this.chunkSize = chunkSize;
+        this.dataLength = dataLength;
+        this.ivDigest = ivDigest;
+        this.fingerprints = fingerprints;
+    }
+
+    static Path pathFor(Path output) {
+        return Paths.get(output + EXT);
+    }
+
+    /**
+     * Manifestul iesirii output sau null daca nu exista sau e deteriorat.
+     */
+    static ChunkManifest load(Path output) throws IOException {
+        Path path = pathFor(output);
+        byte[] b;
+        try {
+            b = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(b);
+        if (b.length < HEADER_SIZE + Long.BYTES || !Arrays.equals(Arrays.copyOf(b, MAGIC.length), MAGIC)) {
+            logger.debug("Ignoring invalid manifest " + path);
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b, 0, b.length - Long.BYTES);
+        int chunkSize = buf.getInt(8);
+        long chunks = buf.getInt(12);
+        if (buf.getLong(b.length - Long.BYTES) != crc.getValue() || chunkSize <= 0
+                || b.length != HEADER_SIZE + chunks * FINGERPRINT_SIZE + Long.BYTES) {
+            logger.debug("Ignoring damaged manifest " + path);
+            return null;
+        }
+        return new ChunkManifest(chunkSize, buf.getLong(16), Arrays.copyOfRange(b, 24, 24 + DIGEST_SIZE),
+                Arrays.copyOfRange(b, HEADER_SIZE, b.length - Long.BYTES));
+    }
+
+    /**
+     * Scrie manifestul intr-un fisier temporar si il inlocuieste prin redenumire atomica.
+     */
+    void save(Path output) throws IOException {
+        Path path = pathFor(output);
+        Path tmp = Paths.get(path + ".tmp");
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + fingerprints.length + Long.BYTES);
+        buf.put(MAGIC).putInt(chunkSize).putInt(getChunkCount()).putLong(dataLength).put(ivDigest).put(fingerprints);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putLong(crc.getValue());
+        buf.flip();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Sterge manifestul, inainte ca containerul sa fie modificat: daca actualizarea e intrerupta, urmatoarea
+     * criptare rescrie tot containerul.
+     */
+    static void delete(Path output) throws IOException {
+        Files.deleteIfExists(pathFor(output));
+    }
+
+    /**
+     * Manifestul a fost scris pentru acest container (aceleasi bucati si aceleasi IV-uri).
+     */
+    boolean matches(ChunkedContainer container) {
+        return container.getChunkSize() == chunkSize && container.getChunkCount() == getChunkCount()
+                && container.getDataLength() == dataLength
+                && MessageDigest.isEqual(digest(container.ivs()), ivDigest);
+    }
+
+    /**
+     * Amprenta bucatii index e aceeasi cu cea din fingerprint (de la pozitia pos).
+     */
+    boolean isUnchanged(int index, byte[] fingerprint, int pos) {
+        for (int i = 0; i < FINGERPRINT_SIZE; i++) {
+            if (fingerprints[index * FINGERPRINT_SIZE + i] != fingerprint[pos + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getChunkCount() {
+        return fingerprints.length / FINGERPRINT_SIZE;
+    }
+
+    /**
+     * HMAC-SHA256 pentru amprentele bucatilor, cu o cheie derivata din cheia de criptare.
+     */
+    static Mac newMac(String key) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(MAGIC);
+            byte[] macKey = sha.digest(key.getBytes(StandardCharsets.UTF_8));
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(macKey, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available.", e);
+        }
+    }
+
+    /**
+     * Scrie amprenta a len octeti din data in dst, la pozitia pos.
+     */
+    static void fingerprint(Mac mac, byte[] data, int len, byte[] dst, int pos) {
+        mac.update(data, 0, len);
+        System.arraycopy(mac.doFinal(), 0, dst, pos, FINGERPRINT_SIZE);
+    }
+
+    private static byte[] digest(byte[] ivs) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(ivs);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available.", e);
+        }
+    }
+}
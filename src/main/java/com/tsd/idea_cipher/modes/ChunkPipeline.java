@@ -0,0 +1,226 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Procesare paralela a unui fisier pentru modurile care pot procesa bucati independente
+ * ({@link OperationMode#isParallel()}): ECB, CTR, sau decriptarea CBC / CFB.
+ *
+ * Firul apelant citeste bucati intr-un inel de buffere, N fire de lucru le cripteaza, iar un fir de scriere le scrie
+ * in fisierul de iesire in ordinea in care au fost citite. Fiecare bucata primeste o copie a ultimului bloc de intrare
+ * din bucata anterioara, pentru modurile care inlantuie blocurile.
+ *
+ * Cu un singur fir de lucru bucatile sunt criptate secvential, in ordine, deci orice mod poate fi folosit: citirea
+ * bucatii N+1 si scrierea bucatii N-1 se suprapun cu criptarea bucatii N.
+ */
+class ChunkPipeline {
+
+    private static final int BLOCK_SIZE = 8;
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    private final OperationMode opMod;
+    private final int threads;
+    private final int chunkSize;
+    private final boolean sequential;
+    private final EngineMetrics metrics;
+
+    ChunkPipeline(OperationMode opMod, int threads, int chunkSize) {
+        this(opMod, threads, chunkSize, EngineMetrics.getDefault());
+    }
+
+    /**
+     * @param opMod     modul de operare (paralel, daca threads > 1)
+     * @param threads   numarul de fire de lucru
+     * @param chunkSize dimensiunea unei bucati (multiplu de dimensiunea blocului)
+     * @param metrics   metricile etapelor si ale cozii
+     */
+    ChunkPipeline(OperationMode opMod, int threads, int chunkSize, EngineMetrics metrics) {
+        if (threads > 1 && !opMod.isParallel()) {
+            throw new IllegalArgumentException("Mode of operation is not parallel.");
+        }
+        this.opMod = opMod;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        sequential = threads == 1;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Bucata din fisier, impreuna cu bufferul ei din inel.
+     */
+    private static class Chunk {
+        final byte[] data;
+        final byte[] prev = new byte[BLOCK_SIZE]; // Ultimul bloc de intrare al bucatii anterioare
+        long filePos;       // Pozitia in fisierul de intrare
+        int chunkLen;       // Lungimea rotunjita la dimensiunea blocului
+        int bytesToWrite;   // Cat se scrie in fisierul de iesire
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    /**
+     * Citeste inDataLen octeti din inChannel, ii cripteaza / decripteaza si scrie outDataLen octeti in outChannel.
+     *
+     * @param progress primeste numarul de octeti scrisi dupa fiecare bucata
+     */
+    void process(FileChannel inChannel, long inDataLen, FileChannel outChannel, long outDataLen,
+                 LongConsumer progress) throws IOException {
+        process(inChannel, inDataLen, outChannel, outDataLen, 0, progress);
+    }
+
+    /**
+     * Ca mai sus, pentru o parte a fisierului care incepe cu blocul firstBlock (de exemplu, dupa un punct de control).
+     * Modul trebuie sa fie in starea de dupa blocul firstBlock - 1.
+     */
+    void process(FileChannel inChannel, long inDataLen, FileChannel outChannel, long outDataLen, long firstBlock,
+                 LongConsumer progress) throws IOException {
+        int ringSize = Math.max(threads * 2, 3); // Cel putin un buffer pentru citire, criptare si scriere
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            free.add(new Chunk(chunkSize));
+        }
+        // Bucatile in ordinea citirii; null marcheaza sfarsitul
+        BlockingQueue<Future<Chunk>> ordered = new ArrayBlockingQueue<>(ringSize + 1);
+        int id = POOL_ID.incrementAndGet();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, daemon("idea-worker-" + id + "-"));
+        ExecutorService writerExecutor = Executors.newSingleThreadExecutor(daemon("idea-writer-" + id + "-"));
+        try {
+            Future<?> writer = writerExecutor.submit(() -> {
+                write(ordered, free, outChannel, progress, metrics);
+                return null;
+            });
+            byte[] last = new byte[BLOCK_SIZE]; // Ultimul bloc de intrare citit
+            long filePos = 0;
+            while (filePos < inDataLen) {
+                Chunk chunk = takeFree(free, writer);
+                // Citeste din fisierul de intrare in buffer
+                int bytesToRead = (int) Math.min(inDataLen - filePos, chunkSize);
+                ByteBuffer buf = ByteBuffer.wrap(chunk.data, 0, bytesToRead);
+                long t0 = System.nanoTime();
+                while (buf.hasRemaining()) {
+                    if (inChannel.read(buf) < 0) {
+                        throw new IOException("Incomplete data chunk read from file.");
+                    }
+                }
+                metrics.record(EngineMetrics.Stage.READ, t0, bytesToRead);
+                chunk.filePos = filePos;
+                chunk.chunkLen = (bytesToRead + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+                chunk.bytesToWrite = (int) Math.min(outDataLen - filePos, chunk.chunkLen);
+                Arrays.fill(chunk.data, bytesToRead, chunk.chunkLen, (byte) 0); // Umple spatiul liber cu 0
+                boolean first = filePos == 0;
+                System.arraycopy(last, 0, chunk.prev, 0, BLOCK_SIZE);
+                System.arraycopy(chunk.data, chunk.chunkLen - BLOCK_SIZE, last, 0, BLOCK_SIZE);
+                // Cripteaza bucata pe un fir de lucru
+                ordered.add(workers.submit(() -> {
+                    long start = System.nanoTime();
+                    if (sequential) {
+                        opMod.crypt(chunk.data, 0, chunk.chunkLen);
+                    } else {
+                        opMod.crypt(chunk.data, 0, chunk.chunkLen, firstBlock + chunk.filePos / BLOCK_SIZE,
+                                first ? null : chunk.prev);
+                    }
+                    metrics.record(EngineMetrics.Stage.CRYPT, start, chunk.chunkLen);
+                    return chunk;
+                }));
+                metrics.queueDepth(ordered.size());
+                filePos += chunk.chunkLen;
+            }
+            ordered.add(CompletableFuture.completedFuture(null));
+            await(writer);
+            if (!sequential) {
+                // Starea modului pentru blocul cu lungimea datelor
+                opMod.advance(firstBlock + filePos / BLOCK_SIZE, last);
+            }
+        } finally {
+            workers.shutdownNow();
+            writerExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Firul de scriere: asteapta bucatile in ordine, le scrie si le intoarce in inel.
+     */
+    private static void write(BlockingQueue<Future<Chunk>> ordered, BlockingQueue<Chunk> free,
+                              FileChannel outChannel, LongConsumer progress, EngineMetrics metrics)
+            throws IOException, InterruptedException, ExecutionException {
+        while (true) {
+            Chunk chunk = ordered.take().get();
+            if (chunk == null) {
+                return;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(chunk.data, 0, chunk.bytesToWrite);
+            long t0 = System.nanoTime();
+            while (buf.hasRemaining()) {
+                outChannel.write(buf);
+            }
+            metrics.record(EngineMetrics.Stage.WRITE, t0, chunk.bytesToWrite);
+            progress.accept(chunk.filePos + chunk.chunkLen);
+            free.add(chunk);
+        }
+    }
+
+    /**
+     * Urmatorul buffer liber din inel. Se opreste daca firul de scriere a esuat.
+     */
+    private static Chunk takeFree(BlockingQueue<Chunk> free, Future<?> writer) throws IOException {
+        try {
+            Chunk chunk;
+            while ((chunk = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                if (writer.isDone()) {
+                    await(writer);
+                    throw new IOException("Writer stopped unexpectedly.");
+                }
+            }
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free buffer.");
+        }
+    }
+
+    /**
+     * Asteapta firul de scriere si propaga eroarea lui.
+     */
+    private static void await(Future<?> writer) throws IOException {
+        try {
+            writer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the writer.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error while processing data chunk.", cause);
+        }
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,205 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.modes.algorithms.ChunkedCBC;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Containerul pentru CBC pe bucati ({@link ChunkedCBC}): datele sunt impartite in bucati de dimensiune fixa,
+ * inlantuite separat, fiecare cu IV-ul ei, ca sa poata fi criptate si decriptate in paralel.
+ *
+ * Format: antet (magic, dimensiunea bucatii, numarul de bucati, lungimea datelor criptata), indexul cu IV-urile
+ * bucatilor, apoi bucatile criptate. Toate bucatile au aceeasi dimensiune, mai putin ultima, deci pozitia oricarei
+ * bucati se calculeaza direct, fara a parcurge fisierul.
+ */
+public final class ChunkedContainer {
+
+    public static final int DEFAULT_CHUNK_SIZE = 0x400000; // 4MB
+    static final int HEADER_SIZE = 32;
+    private static final byte[] MAGIC = "IDEACHK1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCK_SIZE = 8;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int chunkSize;
+    private final long dataLength;
+    private final byte[] ivs;
+
+    private ChunkedContainer(int chunkSize, long dataLength, byte[] ivs) {
+        this.chunkSize = chunkSize;
+        this.dataLength = dataLength;
+        this.ivs = ivs;
+    }
+
+    /**
+     * Un container nou pentru dataLength octeti, cu IV-uri aleatoare.
+     */
+    public static ChunkedContainer create(long dataLength, int chunkSize) {
+        if (chunkSize <= 0 || chunkSize % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        } else if (dataLength < 0 || dataLength > DataLength.MAX_LENGTH) {
+            throw new IllegalArgumentException("File too long.");
+        }
+        long chunks = (dataLength + chunkSize - 1) / chunkSize;
+        if (chunks * BLOCK_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many chunks, use a larger chunk size.");
+        }
+        byte[] ivs = new byte[(int) chunks * BLOCK_SIZE];
+        RANDOM.nextBytes(ivs);
+        return new ChunkedContainer(chunkSize, dataLength, ivs);
+    }
+
+    /**
+     * Fisierul incepe cu antetul unui container. Nu modifica pozitia canalului.
+     */
+    public static boolean isContainer(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        readFully(channel, magic, 0);
+        return !magic.hasRemaining() && Arrays.equals(magic.array(), MAGIC);
+    }
+
+    /**
+     * Citeste antetul si indexul. Lungimea datelor e decriptata cu cheia, deci o cheie gresita e detectata aici.
+     */
+    public static ChunkedContainer read(FileChannel channel, String key, KeyScheduleCache cache) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        byte[] b = header.array();
+        if (header.hasRemaining() || !Arrays.equals(Arrays.copyOf(b, MAGIC.length), MAGIC)) {
+            throw new IOException("Input file is not a chunked container.");
+        }
+        int chunkSize = header.getInt(8);
+        long chunks = header.getLong(16);
+        if (chunkSize <= 0 || chunkSize % BLOCK_SIZE != 0 || chunks < 0 || chunks * BLOCK_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("Invalid chunked container header.");
+        }
+        new IdeaCipher(key, false, cache).crypt(b, 24);
+        long dataLength = DataLength.unpack(b, 24);
+        long dataOffset = HEADER_SIZE + chunks * BLOCK_SIZE;
+        long cryptLen = channel.size() - dataOffset;
+        if (dataLength < 0 || (dataLength + chunkSize - 1) / chunkSize != chunks
+                || cryptLen != (dataLength + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE) {
+            throw new IOException("Input file is not a valid cryptogram (wrong key or file size)");
+        }
+        ByteBuffer ivs = ByteBuffer.allocate((int) chunks * BLOCK_SIZE);
+        readFully(channel, ivs, HEADER_SIZE);
+        if (ivs.hasRemaining()) {
+            throw new IOException("Incomplete chunk index.");
+        }
+        return new ChunkedContainer(chunkSize, dataLength, ivs.array());
+    }
+
+    /**
+     * Scrie antetul si indexul la inceputul fisierului.
+     */
+    public void write(FileChannel channel, String key, KeyScheduleCache cache) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putInt(chunkSize).putInt(0).putLong(getChunkCount());
+        byte[] b = header.array();
+        DataLength.pack(dataLength, b, 24);
+        new IdeaCipher(key, true, cache).crypt(b, 24);
+        writeFully(channel, ByteBuffer.wrap(b), 0);
+        writeFully(channel, ByteBuffer.wrap(ivs), HEADER_SIZE);
+    }
+
+    /**
+     * Modul de operare pentru datele containerului, la pozitia 0 a datelor.
+     */
+    public ChunkedCBC newMode(boolean encrypt, String key, KeyScheduleCache cache) {
+        return new ChunkedCBC(encrypt, key, chunkSize, ivs, cache);
+    }
+
+    /**
+     * Decripteaza bucata index, citind doar bucata respectiva. Intoarce datele fara padding.
+     */
+    public byte[] readChunk(FileChannel channel, int index, String key, KeyScheduleCache cache) throws IOException {
+        if (index < 0 || index >= getChunkCount()) {
+            throw new IndexOutOfBoundsException("Chunk " + index + " of " + getChunkCount());
+        }
+        long start = (long) index * chunkSize;
+        int len = (int) Math.min(chunkSize, dataLength - start);
+        ByteBuffer buf = ByteBuffer.allocate((len + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+        readFully(channel, buf, chunkOffset(index));
+        if (buf.hasRemaining()) {
+            throw new IOException("Incomplete data chunk read from file.");
+        }
+        OperationMode opMod = newMode(false, key, cache);
+        opMod.crypt(buf.array(), 0, buf.capacity(), start / BLOCK_SIZE, null);
+        return Arrays.copyOf(buf.array(), len);
+    }
+
+    /**
+     * Acelasi container (aceleasi bucati si IV-uri) pentru o alta lungime a datelor, cu acelasi numar de bucati.
+     */
+    ChunkedContainer withDataLength(long dataLength) {
+        if ((dataLength + chunkSize - 1) / chunkSize != getChunkCount()) {
+            throw new IllegalArgumentException("The chunk count cannot change.");
+        }
+        return new ChunkedContainer(chunkSize, dataLength, ivs);
+    }
+
+    /**
+     * Un IV nou, aleator, pentru bucata index, inainte ca ea sa fie criptata din nou. Modurile create cu
+     * {@link #newMode} folosesc IV-urile curente ale containerului.
+     */
+    void renewIv(int index) {
+        byte[] iv = new byte[BLOCK_SIZE];
+        RANDOM.nextBytes(iv);
+        System.arraycopy(iv, 0, ivs, index * BLOCK_SIZE, BLOCK_SIZE);
+    }
+
+    /**
+     * Indexul cu IV-urile bucatilor (nu o copie).
+     */
+    byte[] ivs() {
+        return ivs;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return ivs.length / BLOCK_SIZE;
+    }
+
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * Pozitia datelor criptate in fisier (dupa antet si index).
+     */
+    public long getDataOffset() {
+        return HEADER_SIZE + ivs.length;
+    }
+
+    /**
+     * Pozitia bucatii index in fisier.
+     */
+    public long chunkOffset(int index) {
+        return getDataOffset() + (long) index * chunkSize;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, pos);
+            if (n < 0) {
+                return;
+            }
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer src, long pos) throws IOException {
+        while (src.hasRemaining()) {
+            pos += channel.write(src, pos);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Criptare cu compresie / decriptare cu decompresie, in formatul {@link CompressionStage}: antet, datele comprimate
+ * criptate, lungimea lor criptata si trailer-ul modului ({@link Cryptogram}). Procesarea e secventiala.
+ *
+ * La decriptare datele ajung la Inflater si in fisierul de iesire inainte de verificarea tag-ului; pentru modurile
+ * autentificate tag-ul trebuie verificat inainte, cu {@link Cryptogram#authenticate}.
+ */
+class CompressedEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressedEngine.class);
+
+    private final OperationMode opMod;
+    private final CompressionStage stage;
+
+    /**
+     * @param opMod   modul de operare
+     * @param bufSize dimensiunea bufferelor (multiplu de dimensiunea blocului)
+     * @param metrics metricile etapelor (criptarea nu include compresia)
+     */
+    CompressedEngine(OperationMode opMod, int bufSize, EngineMetrics metrics) {
+        this.opMod = opMod;
+        this.stage = new CompressionStage(opMod, bufSize, metrics);
+    }
+
+    /**
+     * Comprima si cripteaza tot fisierul de intrare in fisierul de iesire (gol), cu nivelul de compresie level.
+     */
+    void encrypt(FileChannel inChannel, FileChannel outChannel, int level, FileProcessor.Listener listener)
+            throws IOException {
+        long inFileSize = inChannel.size();
+        long t0 = System.currentTimeMillis();
+        listener.status("Input size: " + inFileSize / 1024 + "KB.");
+        CompressionStage.writeHeader(outChannel);
+        long compressedLen = stage.compress(inChannel, inFileSize, outChannel, level,
+                done -> listener.progress(done, inFileSize));
+        logger.debug("Compressed " + inFileSize + "b to " + compressedLen + "b");
+        Cryptogram.writeSuffix(outChannel, compressedLen, opMod);
+        listener.status("Encryption finished (" + (System.currentTimeMillis() - t0) + "ms).");
+        listener.status("Output size: " + outChannel.size() / 1024 + "KB.");
+    }
+
+    /**
+     * Decripteaza si decomprima fisierul de intrare in fisierul de iesire (gol). Daca lungimea, tag-ul sau datele
+     * comprimate nu sunt corecte, fisierul de iesire e trunchiat la 0.
+     */
+    void decrypt(FileChannel inChannel, FileChannel outChannel, FileProcessor.Listener listener) throws IOException {
+        long t0 = System.currentTimeMillis();
+        long cryptLen = Cryptogram.cryptLength(inChannel.size(), CompressionStage.HEADER_SIZE, opMod);
+        Cryptogram.readTrailer(inChannel, opMod);
+        inChannel.position(CompressionStage.HEADER_SIZE);
+        long compressedLen = stage.decompress(inChannel, cryptLen, outChannel,
+                done -> listener.progress(done, cryptLen));
+        long dataSize;
+        try {
+            dataSize = Cryptogram.finish(inChannel, cryptLen, opMod);
+        } catch (IOException e) {
+            outChannel.truncate(0); // Datele decriptate nu sunt de incredere
+            throw e;
+        }
+        if (compressedLen != dataSize) {
+            outChannel.truncate(0);
+            throw new IOException("Input file is not a valid cryptogram (wrong key or corrupt compressed data)");
+        }
+        listener.status("Decryption finished (" + (System.currentTimeMillis() - t0) + "ms).");
+        listener.status("Output size: " + outChannel.size() / 1024 + "KB.");
+    }
+}
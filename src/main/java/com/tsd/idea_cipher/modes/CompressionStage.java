@@ -0,0 +1,187 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresia datelor inainte de criptare (Deflater, format zlib cu suma de control Adler-32) si decompresia dupa
+ * decriptare, intr-o singura trecere, cu doua buffere de bufSize octeti oricat de mare ar fi fisierul.
+ *
+ * Format: antetul MAGIC (8 octeti, necriptat), apoi criptograma obisnuita a datelor comprimate (date + padding cu 0
+ * + lungimea datelor comprimate, criptata). Decriptarea recunoaste singura antetul.
+ */
+final class CompressionStage {
+
+    static final int HEADER_SIZE = 8;
+    private static final byte[] MAGIC = "IDEAZIP1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCK_SIZE = 8;
+
+    private final OperationMode opMod;
+    private final int bufSize;
+    private final EngineMetrics metrics;
+
+    /**
+     * @param opMod   modul de operare
+     * @param bufSize dimensiunea bufferelor (multiplu de dimensiunea blocului)
+     * @param metrics metricile etapelor (criptarea nu include compresia)
+     */
+    CompressionStage(OperationMode opMod, int bufSize, EngineMetrics metrics) {
+        this.opMod = opMod;
+        this.bufSize = bufSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Fisierul incepe cu antetul datelor comprimate. Nu modifica pozitia canalului.
+     */
+    static boolean isCompressed(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) < 0) {
+                return false;
+            }
+        }
+        return Arrays.equals(magic.array(), MAGIC);
+    }
+
+    /**
+     * Scrie antetul la pozitia curenta a canalului.
+     */
+    static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.wrap(MAGIC);
+        while (magic.hasRemaining()) {
+            channel.write(magic);
+        }
+    }
+
+    /**
+     * Citeste inDataLen octeti din inChannel, ii comprima cu nivelul level si scrie datele comprimate criptate (cu
+     * padding) in outChannel, de la pozitiile curente. Intoarce lungimea datelor comprimate, fara padding.
+     *
+     * @param progress primeste numarul de octeti cititi dupa fiecare bucata
+     */
+    long compress(FileChannel inChannel, long inDataLen, FileChannel outChannel, int level, LongConsumer progress)
+            throws IOException {
+        Deflater deflater = new Deflater(level);
+        try {
+            ByteBuffer in = ByteBuffer.allocate(bufSize);
+            byte[] out = new byte[bufSize];
+            int outLen = 0;
+            long compressedLen = 0;
+            long filePos = 0;
+            do {
+                progress.accept(filePos);
+                int n = (int) Math.min(inDataLen - filePos, bufSize);
+                in.clear();
+                in.limit(n);
+                long t0 = System.nanoTime();
+                while (in.hasRemaining()) {
+                    if (inChannel.read(in) < 0) {
+                        throw new IOException("Incomplete data chunk read from file.");
+                    }
+                }
+                metrics.record(EngineMetrics.Stage.READ, t0, n);
+                filePos += n;
+                deflater.setInput(in.array(), 0, n);
+                if (filePos == inDataLen) {
+                    deflater.finish();
+                }
+                while (filePos == inDataLen ? !deflater.finished() : !deflater.needsInput()) {
+                    outLen += deflater.deflate(out, outLen, out.length - outLen);
+                    if (outLen == out.length) {
+                        cryptAndWrite(out, outLen, outChannel);
+                        compressedLen += outLen;
+                        outLen = 0;
+                    }
+                }
+            } while (filePos < inDataLen);
+            // Ultimul bloc incomplet e completat cu 0
+            int chunkLen = (outLen + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            Arrays.fill(out, outLen, chunkLen, (byte) 0);
+            cryptAndWrite(out, chunkLen, outChannel);
+            return compressedLen + outLen;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Citeste cryptLen octeti (multiplu de dimensiunea blocului) din inChannel, ii decripteaza, decomprima datele si
+     * le scrie in outChannel, de la pozitiile curente. Toata criptograma e decriptata, ca modul sa ajunga in starea
+     * de dupa date (pentru blocul cu lungimea si tag). Intoarce lungimea datelor comprimate consumate de Inflater sau
+     * -1 daca datele comprimate sunt invalide sau incomplete.
+     *
+     * @param progress primeste numarul de octeti cititi dupa fiecare bucata
+     */
+    long decompress(FileChannel inChannel, long cryptLen, FileChannel outChannel, LongConsumer progress)
+            throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            ByteBuffer in = ByteBuffer.allocate(bufSize);
+            ByteBuffer out = ByteBuffer.allocate(bufSize);
+            boolean corrupt = false;
+            for (long filePos = 0; filePos < cryptLen; ) {
+                progress.accept(filePos);
+                int n = (int) Math.min(cryptLen - filePos, bufSize);
+                in.clear();
+                in.limit(n);
+                long t0 = System.nanoTime();
+                while (in.hasRemaining()) {
+                    if (inChannel.read(in) < 0) {
+                        throw new IOException("Incomplete data chunk read from file.");
+                    }
+                }
+                metrics.record(EngineMetrics.Stage.READ, t0, n);
+                t0 = System.nanoTime();
+                opMod.crypt(in.array(), 0, n);
+                metrics.record(EngineMetrics.Stage.CRYPT, t0, n);
+                filePos += n;
+                if (corrupt || inflater.finished()) {
+                    continue; // Doar padding dupa datele comprimate (sau date invalide)
+                }
+                inflater.setInput(in.array(), 0, n);
+                try {
+                    while (!inflater.finished() && !inflater.needsInput()) {
+                        int m = inflater.inflate(out.array());
+                        if (m == 0 && inflater.needsDictionary()) {
+                            throw new DataFormatException("Unexpected preset dictionary.");
+                        }
+                        out.clear();
+                        out.limit(m);
+                        t0 = System.nanoTime();
+                        while (out.hasRemaining()) {
+                            outChannel.write(out);
+                        }
+                        metrics.record(EngineMetrics.Stage.WRITE, t0, m);
+                    }
+                } catch (DataFormatException e) {
+                    corrupt = true;
+                }
+            }
+            return !corrupt && inflater.finished() ? inflater.getBytesRead() : -1;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void cryptAndWrite(byte[] b, int len, FileChannel outChannel) throws IOException {
+        long t0 = System.nanoTime();
+        opMod.crypt(b, 0, len);
+        metrics.record(EngineMetrics.Stage.CRYPT, t0, len);
+        ByteBuffer buf = ByteBuffer.wrap(b, 0, len);
+        t0 = System.nanoTime();
+        while (buf.hasRemaining()) {
+            outChannel.write(buf);
+        }
+        metrics.record(EngineMetrics.Stage.WRITE, t0, len);
+    }
+}
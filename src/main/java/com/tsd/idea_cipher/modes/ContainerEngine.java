@@ -0,0 +1,86 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Criptare / decriptare CBC in formatul {@link ChunkedContainer}. Bucatile pipeline-ului sunt chiar bucatile
+ * containerului, deci si criptarea e paralela.
+ */
+class ContainerEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContainerEngine.class);
+    private static final int BLOCK_SIZE = 8;
+
+    private final String key;
+    private final KeyScheduleCache cache;
+    private final int threads;
+    private final DataEngine data;
+    private final EngineMetrics metrics;
+
+    /**
+     * @param cache   cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     * @param threads fire pentru bucatile containerului
+     * @param data    procesarea cu un singur fir (bucla cu read / write)
+     * @param metrics metricile etapelor
+     */
+    ContainerEngine(String key, KeyScheduleCache cache, int threads, DataEngine data, EngineMetrics metrics) {
+        this.key = key;
+        this.cache = cache;
+        this.threads = threads;
+        this.data = data;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Cripteaza tot fisierul de intrare intr-un container nou, cu bucati de chunkSize octeti, in fisierul de iesire
+     * (gol).
+     */
+    void encrypt(FileChannel inChannel, FileChannel outChannel, int chunkSize, FileProcessor.Listener listener)
+            throws IOException {
+        long inDataLen = inChannel.size();
+        ChunkedContainer container = ChunkedContainer.create(inDataLen, chunkSize);
+        container.write(outChannel, key, cache);
+        outChannel.position(container.getDataOffset());
+        crypt(inChannel, inDataLen, outChannel, container, true, listener);
+    }
+
+    /**
+     * Decripteaza containerul din fisierul de intrare in fisierul de iesire (gol), fara padding.
+     */
+    void decrypt(FileChannel inChannel, FileChannel outChannel, FileProcessor.Listener listener) throws IOException {
+        ChunkedContainer container = ChunkedContainer.read(inChannel, key, cache);
+        inChannel.position(container.getDataOffset());
+        long inDataLen = inChannel.size() - container.getDataOffset();
+        crypt(inChannel, inDataLen, outChannel, container, false, listener);
+        outChannel.truncate(container.getDataLength()); // Fara padding
+    }
+
+    private void crypt(FileChannel inChannel, long inDataLen, FileChannel outChannel, ChunkedContainer container,
+                       boolean encrypt, FileProcessor.Listener listener) throws IOException {
+        long outDataLen = (inDataLen + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        logger.debug("Chunked container: " + container.getChunkCount() + " chunks of " + container.getChunkSize()
+                + "b");
+        listener.status((encrypt ? "Encrypting" : "Decrypting") + " " + container.getChunkCount()
+                + " chunks with CBC mode.");
+        long keySetup = System.nanoTime();
+        OperationMode opMod = container.newMode(encrypt, key, cache);
+        metrics.record(EngineMetrics.Stage.KEY_SETUP, keySetup, 0);
+        long t0 = System.currentTimeMillis();
+        if (threads > 1 && inDataLen > container.getChunkSize()) {
+            new ChunkPipeline(opMod, threads, container.getChunkSize(), metrics).process(inChannel, inDataLen,
+                    outChannel, outDataLen, done -> listener.progress(done, inDataLen));
+        } else {
+            // Nu prin memorie mapata: datele nu incep la inceputul fisierului
+            data.cryptHeap(inChannel, inDataLen, outChannel, outDataLen, opMod,
+                    done -> listener.progress(done, inDataLen));
+        }
+        listener.status((encrypt ? "Encryption" : "Decryption") + " finished ("
+                + (System.currentTimeMillis() - t0) + "ms).");
+    }
+}
@@ -0,0 +1,138 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+import com.tsd.idea_cipher.modes.algorithms.CTRPMAC;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.LongConsumer;
+
+/**
+ * Sfarsitul unui fisier criptat: dupa date urmeaza blocul criptat cu lungimea lor si trailer-ul modului de operare
+ * ({@link OperationMode#getTrailerSize()}: la CTR nonce-ul, la CTR_PMAC nonce-ul si tag-ul). Scrierea dupa criptare
+ * si citirea / verificarea dupa decriptare, comune formatului obisnuit, procesarii pe loc si datelor comprimate.
+ */
+final class Cryptogram {
+
+    private static final int BLOCK_SIZE = 8;
+
+    private Cryptogram() {
+    }
+
+    /**
+     * Octetii de dupa date: blocul cu lungimea si trailer-ul.
+     */
+    static int suffixSize(OperationMode opMod) {
+        return BLOCK_SIZE + opMod.getTrailerSize();
+    }
+
+    /**
+     * Lungimea datelor criptate dintr-un fisier de fileSize octeti, cu headerSize octeti de antet inaintea datelor.
+     */
+    static long cryptLength(long fileSize, long headerSize, OperationMode opMod) throws IOException {
+        long cryptLen = fileSize - headerSize - suffixSize(opMod);
+        if (fileSize % BLOCK_SIZE != 0 || cryptLen < 0) {
+            throw new IOException("Input file is not a valid cryptogram (wrong file size)");
+        }
+        return cryptLen;
+    }
+
+    /**
+     * Scrie lungimea datelor intr-un bloc criptat cu opMod si apoi trailer-ul, de la pozitia curenta a canalului.
+     */
+    static void writeSuffix(FileChannel channel, long dataLength, OperationMode opMod) throws IOException {
+        byte[] block = DataLength.pack(dataLength);
+        opMod.crypt(block); // Inainte de trailer: la CTR_PMAC blocul intra in tag
+        ByteBuffer buf = ByteBuffer.allocate(suffixSize(opMod));
+        buf.put(block);
+        opMod.writeTrailer(buf);
+        buf.flip();
+        while (buf.hasRemaining()) {
+            if (channel.write(buf) == 0) {
+                throw new IOException("Error while writing data length suffix.");
+            }
+        }
+    }
+
+    /**
+     * Citeste trailer-ul de la sfarsitul fisierului in opMod (nonce-ul, tag-ul), inaintea decriptarii. Nu modifica
+     * pozitia canalului.
+     */
+    static void readTrailer(FileChannel channel, OperationMode opMod) throws IOException {
+        int size = opMod.getTrailerSize();
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        long pos = channel.size() - size;
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) {
+                throw new IOException("Unable to read the nonce.");
+            }
+        }
+        buf.flip();
+        opMod.readTrailer(buf);
+    }
+
+    /**
+     * Obtine lungimea datelor ce au fost criptate: decripteaza blocul de la pozitia curenta a canalului (blocul de
+     * dupa date) si despacheteaza lungimea.
+     */
+    static long readDataLength(FileChannel channel, OperationMode opMod) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                throw new IOException("Unable to read data length suffix.");
+            }
+        }
+        byte[] block = buf.array();
+        opMod.crypt(block);
+        return DataLength.unpack(block);
+    }
+
+    /**
+     * Sfarsitul decriptarii a cryptLen octeti de date: citeste blocul cu lungimea de la pozitia curenta a canalului,
+     * verifica tag-ul (modurile autentificate) si lungimea. Intoarce lungimea datelor.
+     */
+    static long finish(FileChannel channel, long cryptLen, OperationMode opMod) throws IOException {
+        long dataSize = readDataLength(channel, opMod);
+        if (!opMod.verifyTrailer()) {
+            throw new IOException("Authentication failed: the file was modified or the key is wrong.");
+        } else if (!DataLength.isValid(dataSize, cryptLen)) {
+            throw new IOException("Input file is not a valid cryptogram (wrong file size)");
+        }
+        return dataSize;
+    }
+
+    /**
+     * Verifica tag-ul CTR_PMAC pentru macLen octeti criptati de la pozitia start (datele si blocul cu lungimea), doar
+     * cu calculul MAC-ului, prin bufferul buf: nimic nu e decriptat inainte ca tag-ul sa fie corect.
+     *
+     * @param progress primeste numarul de octeti autentificati inainte de fiecare bucata
+     */
+    static void authenticate(FileChannel channel, long start, long macLen, CTRPMAC auth, ByteBuffer buf,
+                             EngineMetrics metrics, LongConsumer progress) throws IOException {
+        readTrailer(channel, auth);
+        channel.position(start);
+        for (long filePos = 0; filePos < macLen; ) {
+            progress.accept(filePos);
+            buf.clear();
+            buf.limit((int) Math.min(macLen - filePos, buf.capacity()));
+            long t0 = System.nanoTime();
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    throw new IOException("Incomplete data chunk read from file.");
+                }
+            }
+            metrics.record(EngineMetrics.Stage.READ, t0, buf.limit());
+            t0 = System.nanoTime();
+            auth.authenticate(buf.array(), buf.arrayOffset(), buf.limit());
+            metrics.record(EngineMetrics.Stage.CRYPT, t0, buf.limit());
+            filePos += buf.limit();
+        }
+        if (!auth.verifyTrailer()) {
+            throw new IOException("Authentication failed: the file was modified or the key is wrong.");
+        }
+    }
+}
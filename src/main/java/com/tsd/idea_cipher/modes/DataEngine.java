@@ -0,0 +1,130 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Procesarea datelor unui fisier, de la pozitiile curente ale canalelor: alege intre {@link ChunkPipeline},
+ * {@link MappedFileEngine} si bucla citire / criptare / scriere printr-un buffer din heap.
+ */
+class DataEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataEngine.class);
+    private static final int BLOCK_SIZE = 8;
+
+    private final int threads;
+    private final long mapThreshold;
+    private final boolean overlapIo;
+    private final BufferPool bufferPool;
+    private final EngineMetrics metrics;
+
+    /**
+     * @param threads      fire pentru modurile paralele
+     * @param mapThreshold dimensiunea de la care fisierele sunt procesate prin memorie mapata
+     * @param overlapIo    citirea si scrierea in paralel cu criptarea, si pentru modurile secventiale
+     * @param bufferPool   bufferele pentru procesarea cu read / write (null: un buffer nou de fiecare data)
+     * @param metrics      metricile etapelor
+     */
+    DataEngine(int threads, long mapThreshold, boolean overlapIo, BufferPool bufferPool, EngineMetrics metrics) {
+        this.threads = threads;
+        this.mapThreshold = mapThreshold;
+        this.overlapIo = overlapIo;
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Citeste fisierul de intrare in parti de cate 2 MB, cripteaza / decripteaza o parte si scrie in fisierul de iesire.
+     * Modurile paralele (ECB, CTR, decriptarea CBC / CFB), pe fisiere mai mari de o parte, sunt procesate de
+     * {@link ChunkPipeline}. Celelalte fisiere, de la mapThreshold in sus (daca e setat), sunt procesate de
+     * {@link MappedFileEngine}, iar cele mai mari de o parte de {@link ChunkPipeline} cu un singur fir de criptare
+     * (citire / scriere suprapuse).
+     *
+     * Partea fisierului incepe cu blocul firstBlock, de la pozitiile curente ale canalelor. Maparea in memorie e
+     * folosita doar de la inceputul fisierului (ferestrele au pozitii absolute).
+     */
+    void process(FileChannel inChannel, long inDataLen, FileChannel outChannel, long outDataLen,
+                 OperationMode opMod, long firstBlock, LongConsumer progress) throws IOException {
+        if (opMod.isParallel() && threads > 1 && inDataLen > FileProcessor.BUF_SIZE) {
+            logger.debug("Parallel processing with " + threads + " threads");
+            new ChunkPipeline(opMod, threads, FileProcessor.BUF_SIZE, metrics).process(inChannel, inDataLen,
+                    outChannel, outDataLen, firstBlock, progress);
+            return;
+        }
+        if (inDataLen >= mapThreshold && firstBlock == 0) {
+            logger.debug("Memory-mapped processing");
+            new MappedFileEngine(opMod, MappedFileEngine.WINDOW_SIZE, FileProcessor.BUF_SIZE, metrics).process(
+                    inChannel, inDataLen, outChannel, outDataLen, progress);
+            return;
+        }
+        if (overlapIo && inDataLen > FileProcessor.BUF_SIZE) {
+            logger.debug("Overlapped I/O processing");
+            new ChunkPipeline(opMod, 1, FileProcessor.BUF_SIZE, metrics).process(inChannel, inDataLen, outChannel,
+                    outDataLen, firstBlock, progress);
+            return;
+        }
+        cryptHeap(inChannel, inDataLen, outChannel, outDataLen, opMod, progress);
+    }
+
+    /**
+     * Procesare cu read / write de la pozitiile curente ale canalelor, printr-un buffer din pool (daca exista).
+     */
+    void cryptHeap(FileChannel inChannel, long inDataLen, FileChannel outChannel, long outDataLen,
+                   OperationMode opMod, LongConsumer progress) throws IOException {
+        ByteBuffer buf = bufferPool != null ? bufferPool.acquire() : ByteBuffer.allocate(FileProcessor.BUF_SIZE);
+        try {
+            cryptChunks(inChannel, inDataLen, outChannel, outDataLen, opMod, buf, progress);
+        } finally {
+            if (bufferPool != null) {
+                bufferPool.release(buf);
+            }
+        }
+    }
+
+    /**
+     * Bucla citire / criptare / scriere, cu bufferul buf.
+     */
+    private void cryptChunks(FileChannel inChannel, long inDataLen, FileChannel outChannel, long outDataLen,
+                             OperationMode opMod, ByteBuffer buf, LongConsumer progress) throws IOException {
+        final int bufSize = buf.capacity();
+        long filePos = 0;
+        while (filePos < inDataLen) {
+            // Setare progres
+            progress.accept(filePos);
+            // Citeste din fisierul de intrare in buffer
+            int bytesToRead = (int) Math.min(inDataLen - filePos, bufSize);
+            buf.limit(bytesToRead);
+            buf.position(0);
+            long t0 = System.nanoTime();
+            int bytesRead = inChannel.read(buf);
+            metrics.record(EngineMetrics.Stage.READ, t0, bytesRead);
+            if (bytesRead != bytesToRead) {
+                throw new IOException("Incomplete data chunk read from file.");
+            }
+            // Cripteaza partea (bucata)
+            int chunkLen = (bytesRead + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE; // Cea mai apropiata celula superioara a blockSize-ului
+            Arrays.fill(buf.array(), bytesRead, chunkLen, (byte) 0); // Umple spatiul liber al bucatii cu 0
+            t0 = System.nanoTime();
+            opMod.crypt(buf.array(), 0, chunkLen); // Cripteaza partea respectiva cu modul de operare ales.
+            metrics.record(EngineMetrics.Stage.CRYPT, t0, chunkLen);
+            // Scrie buffer la fisierul de iesire
+            int bytesToWrite = (int) Math.min(outDataLen - filePos, chunkLen);
+            buf.limit(bytesToWrite);
+            buf.position(0);
+            t0 = System.nanoTime();
+            int bytesWritten = outChannel.write(buf);
+            metrics.record(EngineMetrics.Stage.WRITE, t0, bytesWritten);
+            if (bytesWritten != bytesToWrite) {
+                throw new IOException("Incomplete data chunk written to file.");
+            }
+            filePos += chunkLen;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tsd.idea_cipher.modes;
+
+/**
+ * Blocul cu lungimea datelor, adaugat criptat dupa datele criptate (criptograma = date + padding cu 0 + lungime).
+ * Lungimea este un numar de 45 de biti impachetat in 8 octeti.
+ */
+public final class DataLength {
+
+    public static final int BLOCK_SIZE = 8;
+    public static final long MAX_LENGTH = 0x1FFFFFFFFFFFL; // 45 bits -> 32TB
+
+    private DataLength() {
+    }
+
+    /**
+     * Impacheteaza un numar de 45 de biti in blocuri de 8 octeti
+     */
+    public static byte[] pack(long size) {
+        byte[] b = new byte[BLOCK_SIZE];
+        pack(size, b, 0);
+        return b;
+    }
+
+    /**
+     * Impacheteaza lungimea in blocul de la pozitia pos din b.
+     */
+    public static void pack(long size, byte[] b, int pos) {
+        if (size < 0 || size > MAX_LENGTH) {
+            throw new IllegalArgumentException("File too long.");
+        }
+        b[pos] = 0;
+        b[pos + 1] = 0;
+        b[pos + 7] = (byte) (size << 3);
+        b[pos + 6] = (byte) (size >> 5);
+        b[pos + 5] = (byte) (size >> 13);
+        b[pos + 4] = (byte) (size >> 21);
+        b[pos + 3] = (byte) (size >> 29);
+        b[pos + 2] = (byte) (size >> 37);
+    }
+
+    /**
+     * Folosit sa decripteze dimensiunea fisierului.
+     * Returneaza -1 daca valoarea encodata e invalida.
+     */
+    public static long unpack(byte[] b) {
+        return unpack(b, 0);
+    }
+
+    /**
+     * Despacheteaza lungimea din blocul de la pozitia pos din b. Returneaza -1 daca valoarea encodata e invalida.
+     */
+    public static long unpack(byte[] b, int pos) {
+        if (b[pos] != 0 || b[pos + 1] != 0 || (b[pos + 7] & 7) != 0) {
+            return -1;
+        }
+        return (long) (b[pos + 7] & 0xFF) >> 3 |
+                (long) (b[pos + 6] & 0xFF) << 5 |
+                (long) (b[pos + 5] & 0xFF) << 13 |
+                (long) (b[pos + 4] & 0xFF) << 21 |
+                (long) (b[pos + 3] & 0xFF) << 29 |
+                (long) (b[pos + 2] & 0xFF) << 37;
+    }
+
+    /**
+     * Lungimea decriptata e valida pentru cryptLen octeti de date criptate (fara blocul cu lungimea): datele ocupa
+     * ultimul bloc cel putin partial.
+     */
+    public static boolean isValid(long dataSize, long cryptLen) {
+        return dataSize >= 0 && dataSize <= cryptLen && dataSize >= cryptLen - BLOCK_SIZE + 1;
+    }
+}
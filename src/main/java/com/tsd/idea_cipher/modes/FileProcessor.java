@@ -0,0 +1,488 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+import com.tsd.idea_cipher.modes.algorithms.CBC;
+import com.tsd.idea_cipher.modes.algorithms.CFB;
+import com.tsd.idea_cipher.modes.algorithms.CTR;
+import com.tsd.idea_cipher.modes.algorithms.CTRPMAC;
+import com.tsd.idea_cipher.modes.algorithms.ECB;
+import com.tsd.idea_cipher.modes.algorithms.OFB;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+
+/**
+ * Encripteaza sau decripteaza un fisier cu diferite moduri de operare.
+ * Nu depinde de JavaFX: e folosit de interfata grafica prin {@link FileCipher} si direct de linia de comanda.
+ *
+ * Bazat pe urmatorul link: http://www.source-code.biz/idea/java
+ */
+public class FileProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileProcessor.class);
+    private static final int BLOCK_SIZE = 8;
+    static final int BUF_SIZE = 0x200000; // 2MB de buffer
+    private static final int IN_PLACE_CHUNK = 0x800000; // 8MB procesati pe loc intre doua sincronizari
+    private static final Listener NO_LISTENER = new Listener() {
+    };
+
+    private String input;
+    private String output;
+    private String key;
+    private boolean encrypt;
+    private OperationMode.Mode mode;
+    private int threads = Runtime.getRuntime().availableProcessors(); // Fire pentru modurile paralele
+    private int segmentSize = 8; // Dimensiunea segmentului CFB (octeti)
+    private long mapThreshold = Long.MAX_VALUE; // Fisierele de la aceasta dimensiune in sus sunt mapate in memorie
+    private boolean overlapIo = true; // Citirea si scrierea in paralel cu criptarea
+    private int chunkSize; // Bucatile containerului CBC (0: formatul obisnuit)
+    private long checkpointInterval; // Octeti intre punctele de control (0: fara puncte de control)
+    private boolean inPlace; // Fisierul de intrare e suprascris, fara fisier de iesire
+    private int compressionLevel; // Nivelul compresiei inainte de criptare (0: fara compresie)
+    private boolean incremental; // Rescrie doar bucatile modificate ale containerului CBC
+    private KeyScheduleCache cache;
+    private BufferPool bufferPool;
+    private Listener listener = NO_LISTENER;
+    private EngineMetrics metrics = EngineMetrics.getDefault();
+
+    /**
+     * Primeste progresul si mesajele de stare ale procesarii.
+     */
+    public interface Listener {
+        default void progress(long workDone, long max) {
+        }
+
+        default void status(String message) {
+        }
+    }
+
+    public FileProcessor(String input, String output, String key, boolean encrypt, OperationMode.Mode mode) {
+        this.input = input;
+        this.output = output;
+        this.key = key;
+        this.encrypt = encrypt;
+        this.mode = mode;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    /**
+     * Cache pentru subcheile modului de operare (implicit, fara cache).
+     */
+    public void setKeyScheduleCache(KeyScheduleCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Numarul de fire folosite pentru modurile fara dependenta intre blocuri (implicit numarul de procesoare).
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed.");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Dimensiunea segmentului pentru modul CFB, in octeti: 1, 2, 4 sau 8 (implicit, CFB-64).
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Dimensiunea de la care fisierele sunt procesate prin memorie mapata. Implicit Long.MAX_VALUE (fara mapare): in
+     * FileCipherBenchmark maparea nu e mai rapida decat read / write, iar la ECB e mai lenta.
+     */
+    public void setMapThreshold(long mapThreshold) {
+        this.mapThreshold = mapThreshold;
+    }
+
+    /**
+     * Citirea, criptarea si scrierea bucatilor se suprapun, pe fire separate, si pentru modurile secventiale
+     * (implicit activ).
+     */
+    public void setOverlapIo(boolean overlapIo) {
+        this.overlapIo = overlapIo;
+    }
+
+    /**
+     * Criptarea CBC produce un {@link ChunkedContainer} cu bucati de chunkSize octeti, criptate in paralel
+     * (0, implicit: formatul obisnuit, criptare secventiala). Decriptarea CBC recunoaste singura containerul.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 0 || chunkSize % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Chunk size must be a multiple of " + BLOCK_SIZE + ".");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Metricile etapelor si ale fisierelor procesate (implicit, {@link EngineMetrics#getDefault()}).
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Un punct de control la fiecare interval octeti procesati: iesirea e sincronizata pe disc, iar pozitia si starea
+     * modului sunt salvate in jurnalul output.ckpt. Daca procesarea e oprita, o noua procesare a aceluiasi fisier, cu
+     * aceeasi cheie, continua de la ultimul punct de control; la final jurnalul e sters. 0 (implicit): fara puncte
+     * de control. Nu se aplica containerului CBC pe bucati.
+     */
+    public void setCheckpointInterval(long interval) {
+        if (interval < 0 || interval % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be a multiple of " + BLOCK_SIZE + ".");
+        }
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Criptare / decriptare pe loc: fiecare bucata a fisierului de intrare e citita si suprascrisa, fara un al doilea
+     * fisier (output e ignorat). Blocul cu lungimea datelor e adaugat la criptare si eliminat la decriptare. Inainte
+     * de suprascriere, bucata e salvata in jurnalul input.ipj; dupa o oprire brusca, aceeasi operatie, cu aceeasi
+     * cheie, reface bucata si continua. La decriptare cheia e verificata inainte de prima scriere.
+     */
+    public void setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+    }
+
+    /**
+     * Compresia datelor cu Deflater inainte de criptare, in aceeasi trecere: nivelul 1 (rapid) ... 9 (compresie
+     * maxima), -1 pentru nivelul implicit al Deflater-ului, 0 (implicit) fara compresie. Iesirea incepe cu un antet
+     * {@link CompressionStage}, dupa care decriptarea recunoaste singura datele comprimate. Nu se aplica procesarii
+     * pe loc, containerului CBC pe bucati si punctelor de control; procesarea e secventiala.
+     */
+    public void setCompressionLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9.");
+        }
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Criptare incrementala: iesirea e un {@link ChunkedContainer} (CBC, bucati de chunkSize octeti sau implicit
+     * {@link ChunkedContainer#DEFAULT_CHUNK_SIZE}), cu amprentele bucatilor in manifestul output.manifest. O noua
+     * criptare a aceluiasi fisier in aceeasi iesire citeste tot fisierul de intrare, dar cripteaza si scrie doar
+     * bucatile modificate, fiecare cu un IV nou. Daca numarul bucatilor s-a schimbat sau manifestul lipseste ori nu
+     * corespunde containerului, iesirea e rescrisa complet. Doar pentru criptarea CBC; decriptarea e cea obisnuita.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Bufferele pentru procesarea cu read / write, comune mai multor fisiere (implicit, un buffer nou pentru fiecare).
+     */
+    void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Modul de operare ales, pentru criptare sau decriptare.
+     *
+     * @param segmentSize dimensiunea segmentului CFB (octeti)
+     * @param cache       cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public static OperationMode newMode(OperationMode.Mode mode, boolean encrypt, String key, int segmentSize,
+                                        KeyScheduleCache cache) {
+        switch (mode) {
+            case ECB:
+                return new ECB(encrypt, key, cache);
+            case CBC:
+                return new CBC(encrypt, key, cache);
+            case CFB:
+                return new CFB(encrypt, key, segmentSize, cache);
+            case OFB:
+                return new OFB(key, cache);
+            case CTR:
+                return new CTR(encrypt, key, cache);
+            case CTR_PMAC:
+                return new CTRPMAC(encrypt, key, cache);
+            default:
+                throw new IllegalArgumentException("Incorrect mode of operation.");
+        }
+    }
+
+    /**
+     * Criptare/ decriptare fisiere.
+     */
+    public void cryptFile() throws IOException {
+        long t0 = System.nanoTime();
+        long bytes;
+        try {
+            bytes = Files.size(Paths.get(input));
+            if (inPlace) {
+                cryptInPlace();
+            } else if (incremental && encrypt) {
+                cryptIncremental();
+            } else {
+                crypt();
+            }
+        } catch (IOException | RuntimeException e) {
+            metrics.fileFailed();
+            throw e;
+        }
+        metrics.fileDone(input, mode.toString(), encrypt, bytes, System.nanoTime() - t0);
+    }
+
+    /**
+     * Parametrii care schimba rezultatul procesarii, pentru jurnale.
+     */
+    private int jobParams() {
+        return mode.ordinal() | (encrypt ? 0x100 : 0) | segmentSize << 16;
+    }
+
+    private void crypt() throws IOException {
+        CheckpointJournal journal = checkpointInterval > 0
+                ? new CheckpointJournal(Paths.get(output), Paths.get(input), jobParams(), key, cache) : null;
+        // Deschide input / output FileChannels; iesirea e trunchiata dupa citirea punctului de control
+        try (FileChannel inChannel = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            // Date comprimate inainte de criptare
+            boolean compressed = encrypt ? compressionLevel != 0 : CompressionStage.isCompressed(inChannel);
+            // CBC pe bucati, in paralel
+            boolean chunked = mode == OperationMode.Mode.CBC
+                    && (encrypt ? chunkSize > 0 : ChunkedContainer.isContainer(inChannel));
+            if (compressed && chunked) {
+                throw new IllegalStateException("Compression cannot be combined with the chunked container.");
+            }
+            if (journal == null || chunked || compressed) {
+                outChannel.truncate(0);
+            }
+            if (compressed) {
+                cryptCompressed(inChannel, outChannel);
+                return;
+            }
+            if (chunked) {
+                cryptContainer(inChannel, outChannel);
+                return;
+            }
+            // Selectarea modului de operare
+            long keySetup = System.nanoTime();
+            OperationMode opMod = newMode(mode, encrypt, key, segmentSize, cache);
+            metrics.record(EngineMetrics.Stage.KEY_SETUP, keySetup, 0);
+            logger.debug(encrypt ? "Encrypting..." : "Decrypting...");
+            logger.debug("Mode: " + mode.toString());
+            listener.status((encrypt ? "Encrypting" : "Decrypting") + " file with " + mode.toString() + " mode.");
+
+            // Verifica si calculeaza dimensiunea datelor
+            long inFileSize = inChannel.size(); // Dimensiunea fisierului de intrare (bytes)
+            long inDataLen, outDataLen; // Dimensiunea datelor de intrare/ iesire (bytes)
+            if (encrypt) {
+                inDataLen = inFileSize; // Dimensiunea datelor de intrare = Dimensiunea fisierului de intrare
+                outDataLen = (inDataLen + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE; 
+                logger.debug("Sizes: " + inDataLen + "b input, " + (outDataLen + BLOCK_SIZE) + "b output");
+                listener.status("Input size: " + inDataLen / 1024 + "KB.");
+            } else {
+                if (inFileSize == 0) {
+                    throw new IOException("Input file is empty.");
+                } else if (inFileSize % BLOCK_SIZE != 0) {
+                    throw new IOException("Input file size is not a multiple of " + BLOCK_SIZE + ".");
+                }
+                // Dupa date: blocul criptat cu dimensiunea datelor si trailer-ul modului
+                inDataLen = Cryptogram.cryptLength(inFileSize, 0, opMod);
+                Cryptogram.readTrailer(inChannel, opMod);
+                outDataLen = inDataLen;
+                logger.debug("Sizes: " + (inDataLen + BLOCK_SIZE) + "b input, <=" + outDataLen  + "b output");
+                listener.status("Input size: " + (inDataLen + BLOCK_SIZE) / 1024 + "KB.");
+            }
+
+            // Reluare de la ultimul punct de control
+            long start = journal != null ? Math.max(0, journal.load(opMod)) : 0;
+            if (start > 0) {
+                logger.debug("Resuming at " + start + "b");
+                listener.status("Resuming from checkpoint at " + start / 1024 + "KB.");
+            }
+            if (journal != null) {
+                outChannel.truncate(start);
+            }
+
+            // Criptare / Decriptare date
+            listener.status("Running IDEA...");
+            long t0 = System.currentTimeMillis();
+            if (journal != null) {
+                new CheckpointedEngine(dataEngine(), checkpointInterval).process(inChannel, inDataLen, outChannel,
+                        outDataLen, opMod, journal, start, done -> listener.progress(done, inDataLen));
+            } else {
+                processData(inChannel, inDataLen, outChannel, outDataLen, opMod);
+            }
+            long tf = (System.currentTimeMillis() - t0);
+            listener.status((encrypt ? "Encryption" : "Decryption") + " finished (" + tf + "ms).");
+
+            // Scrie / citire lungimea datelor
+            if (encrypt) {
+                listener.status("Attaching file size encrypted...");
+                // Adauga lungimea datelor criptate intr-un bloc criptat la sfarsitul fisierului de iesire.
+                Cryptogram.writeSuffix(outChannel, inDataLen, opMod);
+                listener.status("Output size: " + inDataLen / 1024 + "KB.");
+            } else {
+                listener.status("Checking file size...");
+                // Citeste dimensiunea fisierului si verifica tag-ul
+                long dataSize;
+                try {
+                    dataSize = Cryptogram.finish(inChannel, inDataLen, opMod);
+                } catch (IOException e) {
+                    outChannel.truncate(0); // Datele decriptate nu sunt de incredere
+                    if (journal != null) {
+                        journal.delete();
+                    }
+                    throw e;
+                }
+                // Trunchiaza fisierul de iesire la valoarea datelor
+                if (dataSize != outDataLen) {
+                    outChannel.truncate(dataSize);
+                    listener.status("Truncating output file...");
+                    logger.debug("Truncate " + outDataLen + "b to " + dataSize + "b");
+                }
+                listener.status("Output size: " + dataSize / 1024 + "KB.");
+            }
+            if (journal != null) {
+                journal.delete();
+            }
+            listener.status("Done!");
+        }
+    }
+
+    /**
+     * Criptare / decriptare pe loc, cu {@link InPlaceEngine} si jurnalul {@link InPlaceJournal}.
+     */
+    private void cryptInPlace() throws IOException {
+        Path file = Paths.get(input);
+        if (encrypt && mode == OperationMode.Mode.CBC && chunkSize > 0) {
+            throw new IllegalStateException("The chunked container cannot be written in place.");
+        } else if (encrypt && compressionLevel != 0) {
+            throw new IllegalStateException("Compressed data cannot be written in place.");
+        }
+        listener.status((encrypt ? "Encrypting" : "Decrypting") + " file in place with " + mode.toString()
+                + " mode.");
+        try (InPlaceJournal journal = new InPlaceJournal(file, IN_PLACE_CHUNK, jobParams(), key, cache)) {
+            InPlaceJournal.Record record = journal.load();
+            if (record == null && !encrypt && mode == OperationMode.Mode.CTR_PMAC) {
+                verifyFile(); // Tag-ul e verificat inainte de prima scriere
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                new InPlaceEngine(() -> newMode(mode, encrypt, key, segmentSize, cache), IN_PLACE_CHUNK, metrics)
+                        .process(channel, journal, record, listener);
+            }
+            journal.delete();
+        }
+        listener.status("Done!");
+    }
+
+    /**
+     * Verifica tag-ul unui fisier criptat cu {@link OperationMode.Mode#CTR_PMAC}, fara a-l decripta si fara a scrie
+     * fisierul de iesire: o singura citire si doar calculul MAC-ului.
+     */
+    public void verifyFile() throws IOException {
+        if (mode != OperationMode.Mode.CTR_PMAC) {
+            throw new IllegalStateException("Only " + OperationMode.Mode.CTR_PMAC + " files can be verified.");
+        }
+        try (FileChannel inChannel = FileChannel.open(Paths.get(input), StandardOpenOption.READ)) {
+            listener.status("Verifying file with " + mode.toString() + " mode.");
+            authenticate(inChannel, 0); // Fara antet: datele incep la inceputul fisierului
+            listener.status("Done!");
+        }
+    }
+
+    /**
+     * Verifica tag-ul CTR_PMAC al datelor criptate de dupa headerSize octeti de antet, cu
+     * {@link Cryptogram#authenticate}: nimic nu e decriptat inainte ca tag-ul sa fie corect.
+     */
+    private void authenticate(FileChannel inChannel, long headerSize) throws IOException {
+        long keySetup = System.nanoTime();
+        CTRPMAC auth = new CTRPMAC(false, key, cache);
+        metrics.record(EngineMetrics.Stage.KEY_SETUP, keySetup, 0);
+        long macLen = Cryptogram.cryptLength(inChannel.size(), headerSize, auth) + BLOCK_SIZE;
+        ByteBuffer buf = bufferPool != null ? bufferPool.acquire() : ByteBuffer.allocate(BUF_SIZE);
+        try {
+            Cryptogram.authenticate(inChannel, headerSize, macLen, auth, buf, metrics,
+                    done -> listener.progress(done, macLen));
+        } finally {
+            if (bufferPool != null) {
+                bufferPool.release(buf);
+            }
+        }
+    }
+
+    /**
+     * Criptare / decriptare CBC in formatul {@link ChunkedContainer}, cu {@link ContainerEngine}.
+     */
+    private void cryptContainer(FileChannel inChannel, FileChannel outChannel) throws IOException {
+        ContainerEngine engine = new ContainerEngine(key, cache, threads, dataEngine(), metrics);
+        if (encrypt) {
+            engine.encrypt(inChannel, outChannel, chunkSize, listener);
+        } else {
+            engine.decrypt(inChannel, outChannel, listener);
+        }
+        listener.status("Done!");
+    }
+
+    /**
+     * Criptarea incrementala in containerul CBC pe bucati, cu {@link IncrementalEngine}.
+     */
+    private void cryptIncremental() throws IOException {
+        if (mode != OperationMode.Mode.CBC) {
+            throw new IllegalStateException("Incremental encryption needs the CBC chunked container.");
+        } else if (compressionLevel != 0) {
+            throw new IllegalStateException("Compressed data cannot be encrypted incrementally.");
+        }
+        Path out = Paths.get(output);
+        int chunk = chunkSize > 0 ? chunkSize : ChunkedContainer.DEFAULT_CHUNK_SIZE;
+        try (FileChannel inChannel = FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            new IncrementalEngine(key, cache, chunk, metrics).process(inChannel, outChannel, out, listener);
+        }
+        listener.status("Done!");
+    }
+
+    /**
+     * Criptare cu compresie / decriptare cu decompresie, cu {@link CompressedEngine}. La CTR_PMAC tag-ul e verificat
+     * inaintea decompresiei, intr-o trecere separata.
+     */
+    private void cryptCompressed(FileChannel inChannel, FileChannel outChannel) throws IOException {
+        long keySetup = System.nanoTime();
+        OperationMode opMod = newMode(mode, encrypt, key, segmentSize, cache);
+        metrics.record(EngineMetrics.Stage.KEY_SETUP, keySetup, 0);
+        listener.status((encrypt ? "Compressing and encrypting" : "Decrypting and decompressing") + " file with "
+                + mode.toString() + " mode.");
+        CompressedEngine engine = new CompressedEngine(opMod, BUF_SIZE, metrics);
+        if (encrypt) {
+            engine.encrypt(inChannel, outChannel, compressionLevel, listener);
+        } else {
+            if (mode == OperationMode.Mode.CTR_PMAC) {
+                // Tag-ul e verificat inainte ca datele sa ajunga la Inflater si in fisierul de iesire
+                authenticate(inChannel, CompressionStage.HEADER_SIZE);
+            }
+            engine.decrypt(inChannel, outChannel, listener);
+        }
+        listener.status("Done!");
+    }
+
+    /**
+     * Procesarea datelor cu {@link DataEngine}, de la pozitiile curente ale canalelor.
+     */
+    void processData(FileChannel inChannel, long inDataLen, FileChannel outChannel, long outDataLen,
+                     OperationMode opMod) throws IOException {
+        dataEngine().process(inChannel, inDataLen, outChannel, outDataLen, opMod, 0,
+                done -> listener.progress(done, inDataLen));
+    }
+
+    private DataEngine dataEngine() {
+        return new DataEngine(threads, mapThreshold, overlapIo, bufferPool, metrics);
+    }
+}
@@ -0,0 +1,173 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Criptare / decriptare pe loc, cu jurnalul {@link InPlaceJournal}. Bucatile sunt procesate in ordine: citire,
+ * salvarea bucatii in jurnal, criptare, suprascriere si sincronizare. Blocul cu lungimea datelor (si trailer-ul
+ * modului) e adaugat la criptare si eliminat la decriptare.
+ */
+class InPlaceEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(InPlaceEngine.class);
+    private static final int BLOCK_SIZE = 8;
+
+    private final Supplier<OperationMode> modes;
+    private final int chunkSize;
+    private final EngineMetrics metrics;
+
+    /**
+     * @param modes     modul de operare al procesarii, nou la fiecare apel (la decriptare, al doilea mod verifica
+     *                  lungimea datelor inainte de prima scriere)
+     * @param chunkSize octeti procesati intre doua sincronizari, aceiasi ca ai jurnalului (multiplu de dimensiunea
+     *                  blocului)
+     * @param metrics   metricile etapelor
+     */
+    InPlaceEngine(Supplier<OperationMode> modes, int chunkSize, EngineMetrics metrics) {
+        this.modes = modes;
+        this.chunkSize = chunkSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Proceseaza fisierul deschis pentru citire si scriere. Cu record (inregistrarea incarcata din jurnal), bucata
+     * din jurnal e refacuta si procesarea continua de la ea. Jurnalul nu e sters.
+     */
+    void process(FileChannel channel, InPlaceJournal journal, InPlaceJournal.Record record,
+                 FileProcessor.Listener listener) throws IOException {
+        if (record != null && record.last) {
+            // Decriptarea s-a terminat, a ramas doar trunchierea
+            channel.truncate(record.dataLength);
+            channel.force(false);
+            return;
+        }
+        long keySetup = System.nanoTime();
+        OperationMode opMod = modes.get();
+        metrics.record(EngineMetrics.Stage.KEY_SETUP, keySetup, 0);
+        boolean encrypt = opMod.isEncrypt();
+        if (!encrypt) {
+            Cryptogram.readTrailer(channel, opMod);
+        }
+        byte[] chunk = new byte[chunkSize];
+        long start = 0;
+        long inDataLen;
+        if (record != null) {
+            // Reluare: bucata din jurnal e refacuta, apoi procesata din nou
+            logger.debug("Resuming in-place processing at " + record.pos + "b");
+            listener.status("Resuming from journal at " + record.pos / 1024 + "KB.");
+            opMod.setState(record.state);
+            start = record.pos;
+            inDataLen = record.dataLength;
+            ByteBuffer undo = ByteBuffer.wrap(record.undo);
+            while (undo.hasRemaining()) {
+                channel.write(undo, start + undo.position());
+            }
+        } else if (encrypt) {
+            inDataLen = channel.size();
+        } else {
+            inDataLen = Cryptogram.cryptLength(channel.size(), 0, opMod);
+            if (ChunkedContainer.isContainer(channel)) {
+                throw new IOException("A chunked container cannot be decrypted in place.");
+            } else if (CompressionStage.isCompressed(channel)) {
+                throw new IOException("Compressed data cannot be decrypted in place.");
+            }
+            checkDataLength(channel, inDataLen, chunk);
+        }
+        long outDataLen = encrypt ? (inDataLen + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE : inDataLen;
+
+        listener.status("Running IDEA...");
+        long t0 = System.currentTimeMillis();
+        crypt(channel, start, inDataLen, outDataLen, opMod, journal, chunk, listener);
+        listener.status((encrypt ? "Encryption" : "Decryption") + " finished ("
+                + (System.currentTimeMillis() - t0) + "ms).");
+
+        if (encrypt) {
+            // Starea de dupa date, pentru reluarea scrierii lungimii (si a trailer-ului)
+            journal.write(outDataLen, inDataLen, false, opMod, chunk, 0);
+            channel.position(outDataLen);
+            Cryptogram.writeSuffix(channel, inDataLen, opMod);
+            channel.force(false);
+            listener.status("Output size: " + inDataLen / 1024 + "KB.");
+        } else {
+            channel.position(inDataLen);
+            long dataSize = Cryptogram.finish(channel, inDataLen, opMod);
+            journal.write(0, dataSize, true, opMod, chunk, 0);
+            channel.truncate(dataSize);
+            channel.force(false);
+            listener.status("Output size: " + dataSize / 1024 + "KB.");
+        }
+    }
+
+    /**
+     * Bucla citire / salvare in jurnal / criptare / suprascriere, de la pozitia start.
+     */
+    private void crypt(FileChannel channel, long start, long inDataLen, long outDataLen, OperationMode opMod,
+                       InPlaceJournal journal, byte[] chunk, FileProcessor.Listener listener) throws IOException {
+        for (long pos = start; pos < inDataLen; ) {
+            listener.progress(pos, inDataLen);
+            int n = (int) Math.min(inDataLen - pos, chunk.length);
+            ByteBuffer buf = ByteBuffer.wrap(chunk, 0, n);
+            long t0 = System.nanoTime();
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, pos + buf.position()) < 0) {
+                    throw new IOException("Incomplete data chunk read from file.");
+                }
+            }
+            metrics.record(EngineMetrics.Stage.READ, t0, n);
+            journal.write(pos, inDataLen, false, opMod, chunk, n); // Continutul initial, inainte de suprascriere
+            int chunkLen = (n + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            Arrays.fill(chunk, n, chunkLen, (byte) 0);
+            t0 = System.nanoTime();
+            opMod.crypt(chunk, 0, chunkLen);
+            metrics.record(EngineMetrics.Stage.CRYPT, t0, chunkLen);
+            int bytesToWrite = (int) Math.min(outDataLen - pos, chunkLen);
+            buf = ByteBuffer.wrap(chunk, 0, bytesToWrite);
+            t0 = System.nanoTime();
+            while (buf.hasRemaining()) {
+                channel.write(buf, pos + buf.position());
+            }
+            channel.force(false); // Bucata e pe disc inainte ca jurnalul sa treaca la urmatoarea
+            metrics.record(EngineMetrics.Stage.WRITE, t0, bytesToWrite);
+            pos += chunkLen;
+        }
+    }
+
+    /**
+     * Decripteaza lungimea datelor inainte de decriptarea pe loc, ca o cheie gresita sa fie detectata inainte ca
+     * fisierul sa fie modificat. Starea modului de la sfarsitul datelor e obtinuta cu advance (modurile paralele) sau,
+     * la OFB, generand fluxul de cheie, care nu depinde de date, in bufferul scratch.
+     */
+    private long checkDataLength(FileChannel channel, long inDataLen, byte[] scratch) throws IOException {
+        OperationMode check = modes.get();
+        Cryptogram.readTrailer(channel, check);
+        if (check.isParallel()) {
+            ByteBuffer last = ByteBuffer.allocate(BLOCK_SIZE);
+            if (inDataLen > 0) {
+                while (last.hasRemaining()) {
+                    if (channel.read(last, inDataLen - BLOCK_SIZE + last.position()) < 0) {
+                        throw new IOException("Incomplete data chunk read from file.");
+                    }
+                }
+            }
+            check.advance(inDataLen / BLOCK_SIZE, last.array());
+        } else {
+            for (long done = 0; done < inDataLen; done += scratch.length) {
+                check.crypt(scratch, 0, (int) Math.min(inDataLen - done, scratch.length));
+            }
+        }
+        channel.position(inDataLen);
+        long dataSize = Cryptogram.readDataLength(channel, check);
+        if (!DataLength.isValid(dataSize, inDataLen)) {
+            throw new IOException("Input file is not a valid cryptogram (wrong key or file size)");
+        }
+        return dataSize;
+    }
+}
@@ -0,0 +1,230 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.modes.algorithms.CTR;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Jurnalul criptarii / decriptarii pe loc (file.ipj): inainte ca o bucata sa fie suprascrisa, continutul ei initial,
+ * pozitia si starea modului de operare sunt scrise si sincronizate in jurnal. Dupa o oprire brusca bucata e refacuta
+ * din jurnal si procesarea continua de la ea.
+ *
+ * Jurnalul are doua inregistrari, folosite alternativ: daca scrierea unei inregistrari e intrerupta, cea anterioara
+ * (verificata cu CRC) e inca valida, iar bucata ei a fost deja sincronizata pe disc. Starea modului si continutul
+ * initial al bucatii sunt criptate CTR cu cheia procesarii si un nonce aleator pentru fiecare inregistrare: la
+ * criptare, continutul initial e textul clar, care altfel ar ramane in jurnal dupa suprascrierea bucatii.
+ */
+final class InPlaceJournal implements Closeable {
+
+    static final String EXT = ".ipj";
+    private static final byte[] MAGIC = "IDEAIPJ1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHECK = "IDEAIPJT".getBytes(StandardCharsets.US_ASCII); // Verificarea cheii
+    private static final int BLOCK_SIZE = 8;
+    private static final int STATE_SIZE = 3 * BLOCK_SIZE; // Cea mai mare stare a unui mod (CTR_PMAC)
+    private static final int SEALED_SIZE = CHECK.length + STATE_SIZE;
+    private static final int CRC_POS = 56 + SEALED_SIZE;
+    private static final int HEADER_SIZE = CRC_POS + Long.BYTES;
+    private static final int FINAL = 1;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path path;
+    private final int chunkSize;
+    private final int params;
+    private final String key;
+    private final KeyScheduleCache cache;
+    private FileChannel channel;
+    private long seq;
+    private byte[] sealedUndo; // Continutul initial criptat, refolosit intre inregistrari
+
+    /**
+     * O inregistrare: bucata de la pos trebuie refacuta din undo, cu modul in starea state.
+     */
+    static final class Record {
+        final long pos;
+        final long dataLength;
+        final boolean last;
+        final byte[] state;
+        final byte[] undo;
+
+        Record(long pos, long dataLength, boolean last, byte[] state, byte[] undo) {
+            this.pos = pos;
+            this.dataLength = dataLength;
+            this.last = last;
+            this.state = state;
+            this.undo = undo;
+        }
+    }
+
+    /**
+     * @param file      fisierul procesat pe loc; jurnalul e file.ipj
+     * @param chunkSize dimensiunea maxima a unei bucati
+     * @param params    parametrii procesarii (mod, criptare / decriptare, segment CFB)
+     */
+    InPlaceJournal(Path file, int chunkSize, int params, String key, KeyScheduleCache cache) {
+        path = Paths.get(file + EXT);
+        this.chunkSize = chunkSize;
+        this.params = params;
+        this.key = key;
+        this.cache = cache;
+    }
+
+    /**
+     * Ultima inregistrare valida, pentru aceiasi parametri si aceeasi cheie, sau null.
+     */
+    Record load() throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Record latest = null;
+        long latestSeq = -1;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int slot = 0; slot < 2; slot++) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                if (!readFully(in, header, slotOffset(slot))
+                        || !Arrays.equals(Arrays.copyOf(header.array(), MAGIC.length), MAGIC)) {
+                    continue;
+                }
+                int undoLen = header.getInt(40);
+                int stateLen = header.getInt(44);
+                if (undoLen < 0 || undoLen > chunkSize || stateLen < 0 || stateLen > STATE_SIZE) {
+                    continue;
+                }
+                ByteBuffer undo = ByteBuffer.allocate(padded(undoLen));
+                if (!readFully(in, undo, slotOffset(slot) + HEADER_SIZE)) {
+                    continue;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(header.array(), 0, CRC_POS);
+                crc.update(undo.array(), 0, undo.capacity());
+                if (header.getLong(CRC_POS) != crc.getValue()) {
+                    continue; // Inregistrare scrisa incomplet
+                }
+                byte[] sealed = Arrays.copyOfRange(header.array(), 56, 56 + SEALED_SIZE);
+                crypt(sealed, undo.array(), undo.capacity(), header.getLong(48));
+                // Fisierul e procesat doar in parte: nu poate fi continuat cu alti parametri sau alta cheie
+                if (header.getInt(16) != params) {
+                    throw new IOException("The in-place journal " + path + " belongs to a different operation.");
+                } else if (!Arrays.equals(Arrays.copyOf(sealed, CHECK.length), CHECK)) {
+                    throw new IOException("The in-place journal " + path + " was written with a different key.");
+                }
+                long s = header.getLong(8);
+                if (s > latestSeq) {
+                    latestSeq = s;
+                    latest = new Record(header.getLong(24), header.getLong(32), (header.getInt(20) & FINAL) != 0,
+                            Arrays.copyOfRange(sealed, CHECK.length, CHECK.length + stateLen),
+                            Arrays.copyOf(undo.array(), undoLen));
+                }
+            }
+        }
+        seq = latestSeq + 1;
+        return latest;
+    }
+
+    /**
+     * Scrie si sincronizeaza o inregistrare.
+     *
+     * @param pos        pozitia bucatii care urmeaza sa fie suprascrisa
+     * @param dataLength lungimea datelor de intrare (la ultima inregistrare a decriptarii, lungimea datelor decriptate)
+     * @param last       ultima inregistrare a decriptarii: ramane doar trunchierea fisierului
+     * @param undo       continutul initial al bucatii (undoLen octeti)
+     */
+    void write(long pos, long dataLength, boolean last, OperationMode opMod, byte[] undo, int undoLen)
+            throws IOException {
+        byte[] state = opMod.getState();
+        if (state.length > STATE_SIZE) {
+            throw new IllegalStateException("Mode state too large for the in-place journal.");
+        }
+        byte[] sealed = new byte[SEALED_SIZE];
+        System.arraycopy(CHECK, 0, sealed, 0, CHECK.length);
+        System.arraycopy(state, 0, sealed, CHECK.length, state.length);
+        int undoPadded = padded(undoLen);
+        if (sealedUndo == null) {
+            sealedUndo = new byte[padded(chunkSize)];
+        }
+        System.arraycopy(undo, 0, sealedUndo, 0, undoLen);
+        Arrays.fill(sealedUndo, undoLen, undoPadded, (byte) 0);
+        long nonce = RANDOM.nextLong();
+        crypt(sealed, sealedUndo, undoPadded, nonce);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putLong(seq).putInt(params).putInt(last ? FINAL : 0).putLong(pos).putLong(dataLength)
+                .putInt(undoLen).putInt(state.length).putLong(nonce).put(sealed);
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, CRC_POS);
+        crc.update(sealedUndo, 0, undoPadded);
+        header.putLong(crc.getValue());
+        header.flip();
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        long offset = slotOffset((int) (seq & 1));
+        ByteBuffer data = ByteBuffer.wrap(sealedUndo, 0, undoPadded);
+        while (header.hasRemaining()) {
+            offset += channel.write(header, offset);
+        }
+        while (data.hasRemaining()) {
+            offset += channel.write(data, offset);
+        }
+        channel.force(false);
+        seq++;
+    }
+
+    /**
+     * Sterge jurnalul, dupa terminarea procesarii.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private long slotOffset(int slot) {
+        return (long) slot * (HEADER_SIZE + padded(chunkSize));
+    }
+
+    /**
+     * Cripteaza / decripteaza starea si, in continuarea fluxului de cheie, continutul initial (undoLen, multiplu de
+     * dimensiunea blocului).
+     */
+    private void crypt(byte[] sealed, byte[] undo, int undoLen, long nonce) {
+        CTR ctr = new CTR(true, key, cache);
+        ctr.setNonce(nonce);
+        ctr.crypt(sealed, 0, sealed.length);
+        ctr.crypt(undo, 0, undoLen);
+    }
+
+    private static int padded(int len) {
+        return (len + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    private static boolean readFully(FileChannel in, ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = in.read(dst, pos);
+            if (n < 0) {
+                return false;
+            }
+            pos += n;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Criptarea incrementala in containerul CBC pe bucati, cu manifestul {@link ChunkManifest}. Bucatile sunt citite
+ * in ordine; doar cele cu alta amprenta decat in manifest sunt criptate si scrise la pozitia lor. La final sunt
+ * scrise antetul si indexul containerului, apoi manifestul nou.
+ */
+class IncrementalEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalEngine.class);
+    private static final int BLOCK_SIZE = 8;
+
+    private final String key;
+    private final KeyScheduleCache cache;
+    private final int chunkSize;
+    private final EngineMetrics metrics;
+
+    /**
+     * @param cache     cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     * @param chunkSize dimensiunea bucatilor containerului (multiplu de dimensiunea blocului)
+     * @param metrics   metricile etapelor
+     */
+    IncrementalEngine(String key, KeyScheduleCache cache, int chunkSize, EngineMetrics metrics) {
+        this.key = key;
+        this.cache = cache;
+        this.chunkSize = chunkSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Cripteaza tot fisierul de intrare in containerul din fisierul out (outChannel, deschis pentru citire si
+     * scriere), rescriind doar bucatile modificate fata de manifestul out.manifest.
+     */
+    void process(FileChannel inChannel, FileChannel outChannel, Path out, FileProcessor.Listener listener)
+            throws IOException {
+        long inDataLen = inChannel.size();
+        long chunks = (inDataLen + chunkSize - 1) / chunkSize;
+        long keySetup = System.nanoTime();
+        ChunkManifest manifest = ChunkManifest.load(out);
+        ChunkedContainer old = null;
+        if (manifest != null && ChunkedContainer.isContainer(outChannel)) {
+            try {
+                old = ChunkedContainer.read(outChannel, key, cache);
+            } catch (IOException e) {
+                logger.debug("Rewriting " + out + ": " + e.getMessage()); // Alta cheie sau container deteriorat
+            }
+        }
+        boolean update = old != null && manifest.matches(old) && old.getChunkSize() == chunkSize
+                && old.getChunkCount() == chunks;
+        ChunkedContainer container = update ? old.withDataLength(inDataLen)
+                : ChunkedContainer.create(inDataLen, chunkSize);
+        OperationMode opMod = container.newMode(true, key, cache);
+        Mac mac = ChunkManifest.newMac(key);
+        metrics.record(EngineMetrics.Stage.KEY_SETUP, keySetup, 0);
+        listener.status((update ? "Updating " : "Encrypting ") + chunks + " chunks with CBC mode.");
+
+        // Fara manifest pana la sfarsit: o actualizare intrerupta e urmata de o rescriere completa
+        ChunkManifest.delete(out);
+        if (!update) {
+            outChannel.truncate(0);
+        }
+        byte[] fingerprints = new byte[(int) chunks * ChunkManifest.FINGERPRINT_SIZE];
+        ByteBuffer buf = ByteBuffer.allocate(chunkSize);
+        long t0 = System.currentTimeMillis();
+        int changed = 0;
+        inChannel.position(0);
+        for (int i = 0; i < chunks; i++) {
+            listener.progress((long) i * chunkSize, inDataLen);
+            int n = (int) Math.min(inDataLen - (long) i * chunkSize, chunkSize);
+            buf.clear();
+            buf.limit(n);
+            long t = System.nanoTime();
+            while (buf.hasRemaining()) {
+                if (inChannel.read(buf) < 0) {
+                    throw new IOException("Incomplete data chunk read from file.");
+                }
+            }
+            metrics.record(EngineMetrics.Stage.READ, t, n);
+            int fp = i * ChunkManifest.FINGERPRINT_SIZE;
+            ChunkManifest.fingerprint(mac, buf.array(), n, fingerprints, fp);
+            if (update && manifest.isUnchanged(i, fingerprints, fp)) {
+                continue;
+            }
+            if (update) {
+                container.renewIv(i);
+            }
+            int chunkLen = (n + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            Arrays.fill(buf.array(), n, chunkLen, (byte) 0);
+            t = System.nanoTime();
+            opMod.crypt(buf.array(), 0, chunkLen, (long) i * chunkSize / BLOCK_SIZE, null);
+            metrics.record(EngineMetrics.Stage.CRYPT, t, chunkLen);
+            ByteBuffer data = ByteBuffer.wrap(buf.array(), 0, chunkLen);
+            long pos = container.chunkOffset(i);
+            t = System.nanoTime();
+            while (data.hasRemaining()) {
+                pos += outChannel.write(data, pos);
+            }
+            metrics.record(EngineMetrics.Stage.WRITE, t, chunkLen);
+            changed++;
+        }
+        container.write(outChannel, key, cache);
+        outChannel.truncate(container.getDataOffset() + (inDataLen + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+        outChannel.force(true);
+        new ChunkManifest(container, fingerprints).save(out);
+        logger.debug(changed + " of " + chunks + " chunks written");
+        listener.status("Encryption finished (" + (System.currentTimeMillis() - t0) + "ms, " + changed + " of "
+                + chunks + " chunks written).");
+    }
+}
@@ -0,0 +1,128 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.metrics.EngineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.LongConsumer;
+
+/**
+ * Procesarea unui fisier prin memorie mapata: fisierele de intrare si de iesire sunt mapate pe ferestre de
+ * windowSize octeti cu {@link FileChannel#map}, deci nu mai sunt apeluri read / write. Fiecare bucata de sliceSize
+ * octeti e copiata o singura data, din maparea de intrare in cea de iesire, si apoi criptata pe loc in maparea de
+ * iesire cu {@link OperationMode#crypt(ByteBuffer)}, cat timp e inca in cache. Nu se trece prin heap. Ferestrele au
+ * pozitii long, astfel incat fisierele mai mari de 2GB sunt procesate fereastra cu fereastra.
+ *
+ * Canalul de iesire trebuie deschis pentru citire si scriere (cerinta pentru maparea READ_WRITE).
+ */
+class MappedFileEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedFileEngine.class);
+    static final int WINDOW_SIZE = 0x4000000; // 64MB mapati odata
+    private static final int BLOCK_SIZE = 8;
+
+    private final OperationMode opMod;
+    private final int windowSize;
+    private final int sliceSize;
+    private final EngineMetrics metrics;
+
+    MappedFileEngine(OperationMode opMod, int windowSize, int sliceSize) {
+        this(opMod, windowSize, sliceSize, EngineMetrics.getDefault());
+    }
+
+    /**
+     * @param opMod      modul de operare
+     * @param windowSize octeti mapati odata (multiplu de dimensiunea blocului)
+     * @param sliceSize  octeti copiati si criptati odata din fereastra (multiplu de dimensiunea blocului)
+     * @param metrics    metricile etapelor (citirea e copierea din maparea de intrare in cea de iesire)
+     */
+    MappedFileEngine(OperationMode opMod, int windowSize, int sliceSize, EngineMetrics metrics) {
+        this.opMod = opMod;
+        this.windowSize = windowSize;
+        this.sliceSize = sliceSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Citeste inDataLen octeti din inChannel, ii cripteaza / decripteaza si scrie outDataLen octeti in outChannel.
+     * outDataLen e cel putin inDataLen rotunjit la blocuri (ultimul bloc incomplet e completat cu 0).
+     * La final pozitiile canalelor sunt dupa date, ca dupa procesarea cu read / write.
+     *
+     * @param progress primeste numarul de octeti procesati dupa fiecare fereastra
+     */
+    void process(FileChannel inChannel, long inDataLen, FileChannel outChannel, long outDataLen,
+                 LongConsumer progress) throws IOException {
+        long filePos = 0;
+        while (filePos < inDataLen) {
+            long windowLen = Math.min(inDataLen - filePos, windowSize);
+            long outLen = Math.min(outDataLen - filePos, (windowLen + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+            MappedByteBuffer inMap = inChannel.map(FileChannel.MapMode.READ_ONLY, filePos, windowLen);
+            MappedByteBuffer outMap = outChannel.map(FileChannel.MapMode.READ_WRITE, filePos, outLen);
+            try {
+                while (inMap.hasRemaining()) {
+                    int n = Math.min(inMap.remaining(), sliceSize);
+                    int start = outMap.position();
+                    long t0 = System.nanoTime();
+                    ByteBuffer in = inMap.duplicate();
+                    in.limit(in.position() + n);
+                    outMap.put(in);
+                    inMap.position(in.position());
+                    // Ultimul bloc incomplet e completat cu 0 (continutul extins al fisierului nu e definit)
+                    int chunkLen = (n + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+                    while (outMap.position() < start + chunkLen) {
+                        outMap.put((byte) 0);
+                    }
+                    metrics.record(EngineMetrics.Stage.READ, t0, n);
+                    t0 = System.nanoTime();
+                    ByteBuffer chunk = outMap.duplicate();
+                    chunk.limit(start + chunkLen);
+                    chunk.position(start);
+                    opMod.crypt(chunk);
+                    metrics.record(EngineMetrics.Stage.CRYPT, t0, chunkLen);
+                }
+            } finally {
+                unmap(inMap);
+                unmap(outMap);
+            }
+            filePos += windowLen;
+            progress.accept(filePos);
+        }
+        inChannel.position(inDataLen);
+        outChannel.position(outDataLen);
+    }
+
+    /**
+     * Elibereaza maparea imediat, fara a astepta GC-ul (altfel, pe Windows, fisierul nu poate fi trunchiat).
+     * Java 8 nu are un API public pentru asta: se foloseste Cleaner-ul bufferului (Java 8) sau
+     * Unsafe.invokeCleaner (Java 9+). Daca nu e posibil, maparea e eliberata de GC.
+     */
+    private static void unmap(MappedByteBuffer buf) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleaner = buf.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object c = cleaner.invoke(buf);
+                if (c != null) {
+                    c.getClass().getMethod("clean").invoke(c);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buf);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Unable to unmap buffer: " + e);
+        }
+    }
+}
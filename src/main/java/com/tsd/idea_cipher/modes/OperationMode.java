@@ -1,18 +1,27 @@
 package com.tsd.idea_cipher.modes;
 
+import com.tsd.idea_cipher.crypto.BufferCrypt;
+import com.tsd.idea_cipher.crypto.CrytoUtils;
 import com.tsd.idea_cipher.crypto.IdeaCipher;
 
+import java.nio.ByteBuffer;
+
 /**
  * Modul de operare
  */
 public abstract class OperationMode {
 
     public enum Mode {
-        ECB, CBC, CFB, OFB
+        ECB, CBC, CFB, OFB, CTR,
+        /**
+         * CTR cu autentificare (PMAC): criptograma are un tag verificat la decriptare.
+         */
+        CTR_PMAC
     }
 
     protected IdeaCipher idea;
     protected boolean encrypt;
+    private byte[] word; // Blocul pentru crypt(long), daca modul nu o suprascrie
 
     public OperationMode(IdeaCipher idea, boolean encrypt) {
         this.idea = idea;
@@ -21,10 +30,129 @@ public abstract class OperationMode {
 
     protected abstract void crypt(byte[] data, int pos);
 
+    /**
+     * Cripteaza / decripteaza un bloc dat ca long (big-endian), ca {@link #crypt(byte[], int)}, si intoarce blocul
+     * rezultat; folosita pentru bufferele directe si mapate. Implicit printr-un tablou de un bloc al modului; modurile
+     * care tin starea in registre long o suprascriu.
+     */
+    protected long crypt(long block) {
+        if (word == null) {
+            word = new byte[idea.getBlockSize()];
+        }
+        CrytoUtils.putLong(word, 0, block);
+        crypt(word, 0);
+        return CrytoUtils.getLong(word, 0);
+    }
+
     void crypt(byte[] data){
         crypt(data, 0);
     }
 
+    /**
+     * Cripteaza / decripteaza len octeti (multiplu de dimensiunea blocului) incepand cu pozitia pos.
+     */
+    public void crypt(byte[] data, int pos, int len) {
+        int blockSize = idea.getBlockSize();
+        for (int end = pos + len; pos < end; pos += blockSize) {
+            crypt(data, pos);
+        }
+    }
+
+    /**
+     * Cripteaza / decripteaza pe loc octetii ramasi in buffer (heap, direct sau mapat), multiplu de dimensiunea
+     * blocului. Bufferele directe / mapate sunt procesate bloc cu bloc in buffer, cu {@link #crypt(long)}, fara
+     * copiere. La final pozitia e egala cu limita.
+     */
+    public void crypt(ByteBuffer data) {
+        BufferCrypt.crypt(data, idea.getBlockSize(), this::crypt, this::crypt);
+    }
+
+    /**
+     * Cripteaza / decripteaza pe loc octetii ramasi in length buffere incepand cu data[offset], in ordine, ca pe un
+     * singur sir de date (scatter / gather). Un bloc poate continua de la un buffer la urmatorul.
+     */
+    public void crypt(ByteBuffer[] data, int offset, int length) {
+        BufferCrypt.crypt(data, offset, length, idea.getBlockSize(), this::crypt, this::crypt);
+    }
+
+    /**
+     * Blocurile pot fi procesate in paralel cu {@link #crypt(byte[], int, int, long, byte[])}, pe bucati independente.
+     */
+    public boolean isParallel() {
+        return false;
+    }
+
+    /**
+     * Cripteaza / decripteaza o bucata independenta de len octeti care incepe cu blocul blockIndex al fisierului.
+     * Nu modifica starea modului si poate fi apelata concurent din mai multe fire.
+     *
+     * @param data       datele
+     * @param pos        pozitia in data
+     * @param len        numarul de octeti (multiplu de dimensiunea blocului)
+     * @param blockIndex indexul primului bloc in fisier
+     * @param prev       blocul de intrare dinaintea bucatii (null pentru prima bucata: se porneste din starea curenta)
+     */
+    protected void crypt(byte[] data, int pos, int len, long blockIndex, byte[] prev) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is not parallel.");
+    }
+
+    /**
+     * Aduce starea modului la cea de dupa procesarea secventiala a blocks blocuri, dintre care ultimul bloc de
+     * intrare este last. Folosita dupa o procesare paralela, de exemplu pentru blocul cu lungimea datelor.
+     */
+    protected void advance(long blocks, byte[] last) {
+    }
+
+    /**
+     * Starea modului intre doua blocuri (blocul de inlantuire, registrul de feedback, contorul), pentru reluarea
+     * procesarii de la un punct de control. Modurile fara stare intorc un sir gol.
+     */
+    public byte[] getState() {
+        return new byte[0];
+    }
+
+    /**
+     * Restaureaza o stare intoarsa de {@link #getState()} pentru aceeasi cheie si acelasi mod.
+     */
+    public void setState(byte[] state) {
+        checkState(state, 0);
+    }
+
+    protected static void checkState(byte[] state, int length) {
+        if (state.length != length) {
+            throw new IllegalArgumentException("Invalid mode state.");
+        }
+    }
+
+    /**
+     * Octetii pastrati in fisierul criptat dupa blocul cu lungimea datelor (la CTR nonce-ul, la CTR_PMAC nonce-ul si
+     * tag-ul). Modurile fara trailer intorc 0.
+     */
+    public int getTrailerSize() {
+        return 0;
+    }
+
+    /**
+     * Pune trailer-ul in buf (getTrailerSize() octeti), dupa criptarea datelor si a blocului cu lungimea lor.
+     */
+    public void writeTrailer(ByteBuffer buf) {
+    }
+
+    /**
+     * Citeste trailer-ul din buf inaintea decriptarii: nonce-ul e setat in mod, iar tag-ul e pastrat pentru
+     * {@link #verifyTrailer()}.
+     */
+    public void readTrailer(ByteBuffer buf) {
+    }
+
+    /**
+     * Dupa decriptare: criptograma procesata corespunde tag-ului citit cu {@link #readTrailer(ByteBuffer)}. Modurile
+     * neautentificate intorc true.
+     */
+    public boolean verifyTrailer() {
+        return true;
+    }
+
     public boolean isEncrypt() {
         return encrypt;
     }
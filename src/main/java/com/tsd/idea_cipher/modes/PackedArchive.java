@@ -0,0 +1,355 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.modes.algorithms.CTR;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Arhiva criptata cu mai multe fisiere (membri), pentru multe fisiere mici: un singur fisier deschis, un singur mod
+ * de operare si un singur buffer pentru toata arhiva, fara blocul cu lungimea fiecarui fisier.
+ *
+ * Format: antet (magic, nonce), membrii criptati unul dupa altul, fiecare de la un bloc nou (padding cu 0), indexul
+ * criptat (verificarea cheii, numele, pozitiile, dimensiunile si CRC-urile membrilor, CRC-ul indexului), apoi
+ * pozitia si lungimea indexului, necriptate. Totul e criptat CTR, cu contorul nonce + indexul blocului in arhiva,
+ * deci orice membru poate fi decriptat fara a-i decripta pe ceilalti.
+ */
+public final class PackedArchive {
+
+    static final int HEADER_SIZE = 16;
+    static final int FOOTER_SIZE = 16;
+    private static final byte[] MAGIC = "IDEAPAK1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHECK = "IDEAPAKI".getBytes(StandardCharsets.US_ASCII); // Verificarea cheii
+    private static final int BLOCK_SIZE = 8;
+    private static final int BUF_SIZE = 0x40000; // 256KB
+
+    private PackedArchive() {
+    }
+
+    /**
+     * Un membru al arhivei: numele, pozitia datelor criptate (fata de sfarsitul antetului), dimensiunea si CRC-ul
+     * datelor.
+     */
+    public static final class Entry {
+        private final String name;
+        private final long offset;
+        private final long size;
+        private final int crc;
+
+        Entry(String name, long offset, long size, int crc) {
+            this.name = name;
+            this.offset = offset;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + size + "b)";
+        }
+    }
+
+    /**
+     * Scrie o arhiva noua, membru cu membru; indexul e scris la {@link #close()}. Nu e sigur pentru mai multe fire.
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final CTR ctr;
+        private final byte[] buf = new byte[BUF_SIZE];
+        private final Map<String, Entry> entries = new LinkedHashMap<>();
+        private long pos; // Pozitia urmatorului membru, dupa antet
+        private boolean closed;
+
+        /**
+         * @param archive fisierul arhivei (suprascris daca exista)
+         * @param cache   cache pentru subchei (null: subcheile sunt generate)
+         */
+        public Writer(Path archive, String key, KeyScheduleCache cache) throws IOException {
+            ctr = new CTR(true, key, cache); // Cu un nonce aleator
+            channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putLong(ctr.getNonce());
+            header.flip();
+            writeFully(channel, header);
+        }
+
+        /**
+         * Adauga fisierul file cu numele name.
+         */
+        public void add(String name, Path file) throws IOException {
+            try (InputStream in = Files.newInputStream(file)) {
+                add(name, in);
+            }
+        }
+
+        /**
+         * Adauga datele citite din in, pana la sfarsitul fluxului, cu numele name. Fluxul nu e inchis.
+         */
+        public void add(String name, InputStream in) throws IOException {
+            if (closed) {
+                throw new IOException("Archive closed.");
+            } else if (entries.containsKey(name)) {
+                throw new IllegalArgumentException("Duplicate archive member: " + name);
+            } else if (name.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+                throw new IllegalArgumentException("Member name too long: " + name);
+            }
+            CRC32 crc = new CRC32();
+            long size = 0;
+            ctr.seek(pos / BLOCK_SIZE);
+            try {
+                int n;
+                do {
+                    // Bufferul e umplut cat se poate, doar ultima bucata are un bloc incomplet
+                    n = 0;
+                    int r;
+                    while (n < buf.length && (r = in.read(buf, n, buf.length - n)) >= 0) {
+                        n += r;
+                    }
+                    crc.update(buf, 0, n);
+                    size += n;
+                    int chunkLen = (n + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+                    Arrays.fill(buf, n, chunkLen, (byte) 0);
+                    ctr.crypt(buf, 0, chunkLen);
+                    writeFully(channel, ByteBuffer.wrap(buf, 0, chunkLen));
+                } while (n == buf.length);
+            } catch (IOException | RuntimeException e) {
+                // Membrul incomplet e eliminat, arhiva ramane valida pentru urmatorii
+                channel.truncate(HEADER_SIZE + pos);
+                channel.position(HEADER_SIZE + pos);
+                throw e;
+            }
+            entries.put(name, new Entry(name, pos, size, (int) crc.getValue()));
+            pos += (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        }
+
+        /**
+         * Scrie indexul si inchide arhiva.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (FileChannel c = channel) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.write(CHECK);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.name);
+                    out.writeLong(entry.offset);
+                    out.writeLong(entry.size);
+                    out.writeInt(entry.crc);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes.toByteArray());
+                out.writeInt((int) crc.getValue());
+                while (bytes.size() % BLOCK_SIZE != 0) {
+                    out.write(0);
+                }
+                byte[] index = bytes.toByteArray();
+                ctr.seek(pos / BLOCK_SIZE);
+                ctr.crypt(index, 0, index.length);
+                writeFully(c, ByteBuffer.wrap(index));
+                ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+                footer.putLong(HEADER_SIZE + pos).putLong(index.length);
+                footer.flip();
+                writeFully(c, footer);
+            }
+        }
+    }
+
+    /**
+     * Citeste indexul unei arhive si extrage membri, fiecare citind si decriptand doar datele lui. Nu e sigur pentru
+     * mai multe fire.
+     */
+    public static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final CTR ctr;
+        private final Map<String, Entry> entries = new LinkedHashMap<>();
+        private byte[] buf;
+
+        /**
+         * Deschide arhiva si decripteaza indexul; o cheie gresita e detectata aici.
+         */
+        public Reader(Path archive, String key, KeyScheduleCache cache) throws IOException {
+            channel = FileChannel.open(archive, StandardOpenOption.READ);
+            try {
+                ctr = new CTR(false, key, cache);
+                long size = channel.size();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+                if (size < HEADER_SIZE + FOOTER_SIZE || !readFully(channel, header, 0)
+                        || !Arrays.equals(Arrays.copyOf(header.array(), MAGIC.length), MAGIC)
+                        || !readFully(channel, footer, size - FOOTER_SIZE)) {
+                    throw new IOException("Input file is not a packed archive.");
+                }
+                ctr.setNonce(header.getLong(MAGIC.length));
+                long indexOffset = footer.getLong(0);
+                long indexLength = footer.getLong(Long.BYTES);
+                if (indexOffset < HEADER_SIZE || (indexOffset - HEADER_SIZE) % BLOCK_SIZE != 0
+                        || indexLength < CHECK.length || indexLength % BLOCK_SIZE != 0
+                        || indexLength > Integer.MAX_VALUE || indexOffset + indexLength != size - FOOTER_SIZE) {
+                    throw new IOException("Damaged packed archive (invalid index position).");
+                }
+                ByteBuffer index = ByteBuffer.allocate((int) indexLength);
+                if (!readFully(channel, index, indexOffset)) {
+                    throw new IOException("Incomplete archive index.");
+                }
+                ctr.seek((indexOffset - HEADER_SIZE) / BLOCK_SIZE);
+                ctr.crypt(index.array(), 0, index.capacity());
+                readIndex(index.array(), indexOffset - HEADER_SIZE);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private void readIndex(byte[] index, long dataLength) throws IOException {
+            if (!Arrays.equals(Arrays.copyOf(index, CHECK.length), CHECK)) {
+                throw new IOException("Wrong key for the packed archive.");
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+            try {
+                in.skipBytes(CHECK.length);
+                int count = in.readInt();
+                if (count < 0) {
+                    throw new IOException("Damaged archive index.");
+                }
+                for (int i = 0; i < count; i++) {
+                    Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readInt());
+                    if (entry.offset < 0 || entry.offset % BLOCK_SIZE != 0 || entry.size < 0
+                            || entry.offset + entry.size > dataLength) {
+                        throw new IOException("Damaged archive index.");
+                    }
+                    entries.put(entry.name, entry);
+                }
+                int indexLen = index.length - in.available();
+                CRC32 crc = new CRC32();
+                crc.update(index, 0, indexLen);
+                if (in.readInt() != (int) crc.getValue()) {
+                    throw new IOException("Damaged archive index.");
+                }
+            } catch (EOFException | UTFDataFormatException e) {
+                throw new IOException("Damaged archive index.", e);
+            }
+        }
+
+        /**
+         * Membrii arhivei, in ordinea in care au fost adaugati.
+         */
+        public List<Entry> getEntries() {
+            return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+        }
+
+        /**
+         * Membrul cu numele name, sau null.
+         */
+        public Entry getEntry(String name) {
+            return entries.get(name);
+        }
+
+        /**
+         * Extrage membrul name in fisierul target.
+         */
+        public void extract(String name, Path target) throws IOException {
+            Entry entry = entry(name);
+            try (OutputStream out = Files.newOutputStream(target)) {
+                extract(entry, out);
+            }
+        }
+
+        /**
+         * Scrie datele membrului name in out (fluxul nu e inchis).
+         */
+        public void extract(String name, OutputStream out) throws IOException {
+            extract(entry(name), out);
+        }
+
+        private Entry entry(String name) throws IOException {
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                throw new IOException("No such archive member: " + name);
+            }
+            return entry;
+        }
+
+        private void extract(Entry entry, OutputStream out) throws IOException {
+            if (buf == null) {
+                buf = new byte[BUF_SIZE];
+            }
+            CRC32 crc = new CRC32();
+            ctr.seek(entry.offset / BLOCK_SIZE);
+            long filePos = HEADER_SIZE + entry.offset;
+            for (long done = 0; done < entry.size; ) {
+                int n = (int) Math.min(entry.size - done, buf.length);
+                int chunkLen = (n + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+                if (!readFully(channel, ByteBuffer.wrap(buf, 0, chunkLen), filePos)) {
+                    throw new IOException("Incomplete data chunk read from file.");
+                }
+                ctr.crypt(buf, 0, chunkLen);
+                crc.update(buf, 0, n);
+                out.write(buf, 0, n);
+                filePos += chunkLen;
+                done += n;
+            }
+            if ((int) crc.getValue() != entry.crc) {
+                throw new IOException("Archive member " + entry.name + " is damaged.");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, pos);
+            if (n < 0) {
+                return false;
+            }
+            pos += n;
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.tsd.idea_cipher.modes.algorithms;
 
 import com.tsd.idea_cipher.crypto.CrytoUtils;
 import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
 import com.tsd.idea_cipher.modes.OperationMode;
 
 /**
@@ -12,28 +13,108 @@ import com.tsd.idea_cipher.modes.OperationMode;
  */ 
 public class CBC extends OperationMode {
 
+    private static final int BATCH = 512; // Octeti decriptati odata in paralel
+
     private int blockSize;
-    private byte[] prev;
-    private byte[] newPrev;
+    private long prev; // Blocul criptat anterior, in registru
 
     public CBC(boolean encrypt, String key) {
-        super(new IdeaCipher(key, encrypt), encrypt);
+        this(encrypt, key, null);
+    }
+
+    /**
+     * @param cache cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public CBC(boolean encrypt, String key, KeyScheduleCache cache) {
+        super(new IdeaCipher(key, encrypt, cache), encrypt);
         blockSize = idea.getBlockSize();
-        prev = CrytoUtils.makeKey(key, blockSize); // Obtine vectorul initial (IV) din cheia utilizatorului
-        newPrev = new byte[blockSize];
+        prev = CrytoUtils.getLong(CrytoUtils.makeKey(key, blockSize), 0); // Vectorul initial (IV) din cheie
     }
 
     @Override
     protected void crypt(byte[] data, int pos) {
+        CrytoUtils.putLong(data, pos, crypt(CrytoUtils.getLong(data, pos)));
+    }
+
+    @Override
+    protected long crypt(long block) {
         if (encrypt) {
-            CrytoUtils.xor(data, pos, prev, blockSize);         // Bloc XOR cu un bloc criptat anterior
-            idea.crypt(data, pos);                              // Cripteaza bloc
-            System.arraycopy(data, pos, prev, 0, blockSize);    // Salveaza blocul criptat pentru data urmatoare
+            prev = idea.crypt(block ^ prev);                    // Bloc XOR cu blocul criptat anterior, criptat
+            return prev;
+        }
+        long plain = idea.crypt(block) ^ prev;                  // Decriptat, XOR cu blocul criptat anterior
+        prev = block;                                           // Actualizare bloc anterior
+        return plain;
+    }
+
+    /**
+     * Secvential, blocul de inlantuire ramane in registru intre blocuri.
+     */
+    @Override
+    public void crypt(byte[] data, int pos, int len) {
+        long chain = prev;
+        if (encrypt) {
+            for (int end = pos + len; pos < end; pos += blockSize) {
+                chain = idea.crypt(CrytoUtils.getLong(data, pos) ^ chain);
+                CrytoUtils.putLong(data, pos, chain);
+            }
+        } else {
+            for (int end = pos + len; pos < end; pos += blockSize) {
+                long block = CrytoUtils.getLong(data, pos);
+                CrytoUtils.putLong(data, pos, idea.crypt(block) ^ chain);
+                chain = block;
+            }
+        }
+        prev = chain;
+    }
+
+    /**
+     * Decriptarea e paralela: fiecare bloc depinde doar de blocul criptat anterior, care e deja in date.
+     */
+    @Override
+    public boolean isParallel() {
+        return !encrypt;
+    }
+
+    /**
+     * Decripteaza bucata cate BATCH octeti odata. Blocurile criptate sunt salvate inainte de decriptare, dupa blocul
+     * de inlantuire, astfel incat XOR-ul cu blocurile anterioare se face dintr-o data.
+     */
+    @Override
+    protected void crypt(byte[] data, int pos, int len, long blockIndex, byte[] prevBlock) {
+        byte[] chain = new byte[blockSize + Math.min(len, BATCH)];     // Blocul anterior + blocurile criptate
+        if (prevBlock != null) {
+            System.arraycopy(prevBlock, 0, chain, 0, blockSize);
         } else {
-            System.arraycopy(data, pos, newPrev, 0, blockSize); // Salveaza blocul criptat pentru data urmatoare.
-            idea.crypt(data, pos);                              // Decripteaza bloc
-            CrytoUtils.xor(data, pos, prev, blockSize);         // Bloc XOR cu un bloc criptat anterior
-            prev = newPrev.clone();                             // Actualizare bloc anterior
+            CrytoUtils.putLong(chain, 0, prev);
         }
+        for (int end = pos + len; pos < end; ) {
+            int n = Math.min(end - pos, BATCH);
+            System.arraycopy(data, pos, chain, blockSize, n);           // Salveaza blocurile criptate
+            idea.crypt(data, pos, n);                                   // Decripteaza blocurile
+            CrytoUtils.xor(data, pos, chain, n);                        // XOR fiecare bloc cu blocul criptat anterior
+            System.arraycopy(chain, n, chain, 0, blockSize);            // Ultimul bloc criptat
+            pos += n;
+        }
+    }
+
+    @Override
+    protected void advance(long blocks, byte[] last) {
+        if (!encrypt && blocks > 0) {
+            prev = CrytoUtils.getLong(last, 0);                     // Ultimul bloc criptat
+        }
+    }
+
+    @Override
+    public byte[] getState() {
+        byte[] state = new byte[blockSize];
+        CrytoUtils.putLong(state, 0, prev);
+        return state;
+    }
+
+    @Override
+    public void setState(byte[] state) {
+        checkState(state, blockSize);
+        prev = CrytoUtils.getLong(state, 0);
     }
 }
@@ -2,63 +2,121 @@ package com.tsd.idea_cipher.modes.algorithms;
 
 import com.tsd.idea_cipher.crypto.CrytoUtils;
 import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
 import com.tsd.idea_cipher.modes.OperationMode;
 
-import java.util.Arrays;
-
 /**
- * CFB 
- * r = 8 octeti
+ * CFB
+ * Registrul de feedback (initial IV) e criptat, primii r octeti ai rezultatului sunt XOR cu segmentul de date, iar
+ * segmentul criptat e introdus in registru prin deplasare la stanga cu r octeti.
+ * r = dimensiunea segmentului: 1, 2, 4 sau 8 octeti (CFB-8, CFB-16, CFB-32, CFB-64). Implicit r = 8 octeti.
+ *
+ * Toate operatiile se fac pe loc, fara alocari.
  */
 public class CFB extends OperationMode {
 
     private static final int R = 8;
+    private static final int BATCH = 512; // Octeti decriptati odata in paralel
 
     private int blockSize;
     private int partSize;
-    private int rounds;
-    private byte[] feedback;
+    private byte[] feedback;    // Registrul de feedback
+    private byte[] stream;      // Registrul criptat
 
     public CFB(boolean encrypt, String key) {
-        super(new IdeaCipher(key, true), encrypt);
+        this(encrypt, key, R);
+    }
+
+    /**
+     * @param segmentSize dimensiunea segmentului in octeti (1, 2, 4 sau 8)
+     */
+    public CFB(boolean encrypt, String key, int segmentSize) {
+        this(encrypt, key, segmentSize, null);
+    }
+
+    /**
+     * @param segmentSize dimensiunea segmentului in octeti (1, 2, 4 sau 8)
+     * @param cache       cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public CFB(boolean encrypt, String key, int segmentSize, KeyScheduleCache cache) {
+        super(new IdeaCipher(key, true, cache), encrypt);
         blockSize = idea.getBlockSize();
-        assert blockSize % R == 0 : "R must be divisor of blockSize";
-        partSize = R;
-        rounds = blockSize / R;
+        if (segmentSize < 1 || segmentSize > blockSize || blockSize % segmentSize != 0) {
+            throw new IllegalArgumentException("Segment size must be a divisor of " + blockSize + ".");
+        }
+        partSize = segmentSize;
         feedback = CrytoUtils.makeKey(key, blockSize); // Obtine vectorul intitial (IV) din cheia utilizatoruui
+        stream = new byte[blockSize];
     }
 
     @Override
     protected void crypt(byte[] data, int pos) {
-        // Imparte blocul de date cu dimensiunea blockSize la blocurile partSize
-        byte[][] block = new byte[rounds][];
-        for (int i = 0; i < rounds; i++) {
-            block[i] = Arrays.copyOfRange(data, pos + partSize * i, pos + partSize * i + partSize);
-        }
-        // -> save criptograma (necesara in operatia xor)
-        byte[][] crypt = new byte[0][];
-        if (!this.isEncrypt()) {
-            crypt = new byte[rounds][];
-            for (int i = 0; i < rounds; i++) {
-                crypt[i] = block[i].clone();
+        for (int end = pos + blockSize; pos < end; pos += partSize) {
+            System.arraycopy(feedback, 0, stream, 0, blockSize);
+            idea.crypt(stream);                                             // Cripteaza feedback
+            // Deplaseaza registrul cu un segment la stanga
+            System.arraycopy(feedback, partSize, feedback, 0, blockSize - partSize);
+            for (int i = 0, f = blockSize - partSize; i < partSize; i++, f++) {
+                byte in = data[pos + i];
+                data[pos + i] ^= stream[i];                                 // XOR segment si feedback
+                feedback[f] = encrypt ? data[pos + i] : in;                 // Segmentul criptat intra in registru
             }
         }
-        // Porneste algoritmul CFB
-        byte[] feedbackP1, feedbackP2;
-        for (int i = 0; i < rounds; i++) {
-            idea.crypt(feedback);                                           // Cripteaza feedback
-            feedbackP1 = Arrays.copyOfRange(feedback, 0, partSize);         // Cel mai din stanga R-Bytes al feedback-ului
-            feedbackP2 = Arrays.copyOfRange(feedback, partSize, blockSize); // Cel mai din dreapta (blockSize-R)-Bytes al feedback-ului
-            CrytoUtils.xor(block[i], 0, feedbackP1, partSize);              // XOR parte din date si feedback
-            if (this.isEncrypt()) {
-                feedback = CrytoUtils.concat2Bytes(feedbackP2, block[i]);   // Actualizeaza feedback cu noul bloc de cifre
+    }
+
+    /**
+     * Decriptarea e paralela: registrul fiecarui segment contine octetii criptati anteriori, care sunt deja in date.
+     */
+    @Override
+    public boolean isParallel() {
+        return !encrypt;
+    }
+
+    /**
+     * Decripteaza bucata cate BATCH octeti odata. Registrul segmentului de la pozitia j este format din cei 8 octeti
+     * criptati dinaintea lui, salvati in chain inainte de decriptare.
+     */
+    @Override
+    protected void crypt(byte[] data, int pos, int len, long blockIndex, byte[] prev) {
+        int batch = Math.min(len, BATCH);
+        byte[] chain = new byte[blockSize + batch];                         // Blocul anterior + blocurile criptate
+        byte[] block = new byte[batch];
+        System.arraycopy(prev != null ? prev : feedback, 0, chain, 0, blockSize);
+        for (int end = pos + len; pos < end; ) {
+            int n = Math.min(end - pos, BATCH);
+            System.arraycopy(data, pos, chain, blockSize, n);               // Salveaza blocurile criptate
+            if (partSize == blockSize) {
+                // Registrele sunt blocurile criptate anterioare: le cripteaza dintr-o data
+                System.arraycopy(chain, 0, block, 0, n);
+                idea.crypt(block, 0, n);
+                CrytoUtils.xor(data, pos, block, n);
             } else {
-                feedback = CrytoUtils.concat2Bytes(feedbackP2, crypt[i]);   // Actualizeaza feedback cu noul bloc de cifre salvate
+                for (int j = 0; j < n; j += partSize) {
+                    System.arraycopy(chain, j, block, 0, blockSize);
+                    idea.crypt(block);
+                    CrytoUtils.xor(data, pos + j, block, partSize);
+                }
             }
+            System.arraycopy(chain, n, chain, 0, blockSize);                // Ultimii 8 octeti criptati
+            pos += n;
         }
-        // Unirea rezultatelor
-        for (int i = 0; i < rounds; i++) {
-            System.arraycopy(block[i], 0, data, pos + partSize * i, partSize);
+    }
+
+    @Override
+    protected void advance(long blocks, byte[] last) {
+        if (!encrypt && blocks > 0) {
+            System.arraycopy(last, 0, feedback, 0, blockSize);              // Ultimii 8 octeti criptati
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public byte[] getState() {
+        return feedback.clone();
+    }
+
+    @Override
+    public void setState(byte[] state) {
+        checkState(state, blockSize);
+        System.arraycopy(state, 0, feedback, 0, blockSize);
+    }
+}
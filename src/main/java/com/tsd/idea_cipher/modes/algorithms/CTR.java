@@ -0,0 +1,149 @@
+package com.tsd.idea_cipher.modes.algorithms;
+
+import com.tsd.idea_cipher.crypto.CrytoUtils;
+import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.modes.OperationMode;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+/**
+ * CTR
+ * Blocul de cheie pentru blocul i este criptarea contorului (nonce + i), iar textul e XOR cu acest bloc.
+ * Blocul de cheie depinde doar de index, deci criptarea si decriptarea pot porni de la orice pozitie si pot fi
+ * impartite pe mai multe fire.
+ *
+ * Nonce-ul e aleator pentru fiecare criptare si e pastrat langa criptograma: cu un nonce derivat doar din cheie,
+ * toate fisierele criptate cu aceeasi cheie ar avea acelasi flux de cheie, iar XOR-ul a doua criptograme ar da
+ * XOR-ul textelor.
+ */
+public class CTR extends OperationMode {
+
+    private static final int BATCH = 512; // Octeti de cheie generati odata
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private int blockSize;
+    private long nonce;
+    private long counter; // Indexul blocului urmator
+    private byte[] keyStream;
+
+    public CTR(boolean encrypt, String key) {
+        this(encrypt, key, null);
+    }
+
+    /**
+     * Modul cu un nonce aleator; la decriptare nonce-ul criptogramei e dat cu {@link #setNonce(long)}.
+     *
+     * @param cache cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public CTR(boolean encrypt, String key, KeyScheduleCache cache) {
+        super(new IdeaCipher(key, true, cache), encrypt);
+        blockSize = idea.getBlockSize();
+        nonce = RANDOM.nextLong();
+        keyStream = new byte[BATCH];
+    }
+
+    public long getNonce() {
+        return nonce;
+    }
+
+    public void setNonce(long nonce) {
+        this.nonce = nonce;
+    }
+
+    /**
+     * Nonce-ul.
+     */
+    @Override
+    public int getTrailerSize() {
+        return Long.BYTES;
+    }
+
+    @Override
+    public void writeTrailer(ByteBuffer buf) {
+        buf.putLong(nonce);
+    }
+
+    @Override
+    public void readTrailer(ByteBuffer buf) {
+        nonce = buf.getLong();
+    }
+
+    @Override
+    protected void crypt(byte[] data, int pos) {
+        CrytoUtils.putLong(data, pos, crypt(CrytoUtils.getLong(data, pos)));
+    }
+
+    @Override
+    protected long crypt(long block) {
+        return block ^ idea.crypt(nonce + counter++);       // XOR date si contorul criptat
+    }
+
+    @Override
+    public void crypt(byte[] data, int pos, int len) {
+        xorKeyStream(data, pos, len, counter, keyStream);
+        counter += len / blockSize;
+    }
+
+    /**
+     * Pozitioneaza contorul pe blocul blockIndex (relativ la nonce), pentru acces aleator.
+     */
+    public void seek(long blockIndex) {
+        counter = blockIndex;
+    }
+
+    @Override
+    public boolean isParallel() {
+        return true;
+    }
+
+    @Override
+    protected void crypt(byte[] data, int pos, int len, long blockIndex, byte[] prev) {
+        xorKeyStream(data, pos, len, blockIndex, new byte[Math.min(len, BATCH)]);
+    }
+
+    /**
+     * XOR intre date si blocurile de cheie incepand cu blocIndex, generate cate BATCH octeti odata.
+     */
+    private void xorKeyStream(byte[] data, int pos, int len, long blockIndex, byte[] block) {
+        for (int end = pos + len; pos < end; ) {
+            int n = Math.min(end - pos, block.length);
+            keyStream(blockIndex, block, n);
+            CrytoUtils.xor(data, pos, block, n);
+            blockIndex += n / blockSize;
+            pos += n;
+        }
+    }
+
+    @Override
+    protected void advance(long blocks, byte[] last) {
+        counter = blocks;
+    }
+
+    /**
+     * Nonce-ul si contorul.
+     */
+    @Override
+    public byte[] getState() {
+        return ByteBuffer.allocate(2 * Long.BYTES).putLong(nonce).putLong(counter).array();
+    }
+
+    @Override
+    public void setState(byte[] state) {
+        checkState(state, 2 * Long.BYTES);
+        ByteBuffer buf = ByteBuffer.wrap(state);
+        nonce = buf.getLong();
+        counter = buf.getLong();
+    }
+
+    /**
+     * Blocurile de cheie pentru len octeti incepand cu blocul blockIndex: criptarea lui nonce + blockIndex, ...
+     */
+    private void keyStream(long blockIndex, byte[] block, int len) {
+        for (int pos = 0; pos < len; pos += blockSize) {
+            CrytoUtils.putLong(block, pos, nonce + blockIndex++);
+        }
+        idea.crypt(block, 0, len);
+    }
+}
@@ -0,0 +1,256 @@
+package com.tsd.idea_cipher.modes.algorithms;
+
+import com.tsd.idea_cipher.crypto.CrytoUtils;
+import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.modes.OperationMode;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CTR + PMAC (criptare autentificata)
+ * Datele sunt criptate CTR, iar criptograma e autentificata in aceeasi trecere cu un MAC paralel de tip PMAC:
+ * fiecare bloc criptat C_i e combinat cu un offset Δ_i si criptat cu cheia MAC, iar rezultatele sunt adunate XOR.
+ * Suma nu depinde de ordinea blocurilor, deci bucatile pot fi criptate si autentificate pe fire diferite.
+ *
+ * Cheia MAC e derivata din cheia utilizatorului cu HMAC-SHA256 si o eticheta proprie, deci nu e un bloc al fluxului
+ * de cheie CTR (criptarea lui nonce + i cu aceeasi cheie). Contorul CTR porneste de la un nonce aleator, pastrat
+ * langa criptograma si inclus in tag. Blocurile de cheie si MAC-ul folosesc doar criptarea IDEA, niciodata
+ * decriptarea.
+ */
+public class CTRPMAC extends OperationMode {
+
+    public static final int TAG_SIZE = 8;
+    private static final int BATCH = 512; // Octeti procesati odata
+    private static final long GF_POLY = 0x1B; // x^64 + x^4 + x^3 + x + 1
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final byte[] MAC_KEY_LABEL = "IDEA CTR_PMAC mac key".getBytes(StandardCharsets.US_ASCII);
+    private static final int KEY_SIZE = 16;
+
+    private int blockSize;
+    private IdeaCipher mac;
+    private long[] offsets = new long[64]; // L * x^j, pentru offset-urile Gray
+    private long finalMask; // L$ = E_mac(1...1)
+    private long nonce;
+    private long counter; // Indexul blocului urmator
+    private AtomicLong sum = new AtomicLong(); // Suma XOR a blocurilor MAC
+    private byte[] expectedTag; // Tag-ul citit din trailer
+    private byte[] batch;
+    private byte[] scratch;
+
+    /**
+     * Modul cu un nonce aleator; la decriptare nonce-ul criptogramei e dat cu {@link #setNonce(long)}.
+     *
+     * @param cache cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public CTRPMAC(boolean encrypt, String key, KeyScheduleCache cache) {
+        super(new IdeaCipher(key, true, cache), encrypt);
+        blockSize = idea.getBlockSize();
+        byte[] macKey = macKey(key);
+        mac = new IdeaCipher(macKey, true, cache);
+        Arrays.fill(macKey, (byte) 0);
+        long l = mac.crypt(0);
+        for (int j = 0; j < offsets.length; j++) {
+            offsets[j] = l;
+            l = times2(l);
+        }
+        finalMask = mac.crypt(-1L);
+        nonce = RANDOM.nextLong();
+        batch = new byte[BATCH];
+        scratch = new byte[BATCH];
+    }
+
+    public long getNonce() {
+        return nonce;
+    }
+
+    public void setNonce(long nonce) {
+        this.nonce = nonce;
+    }
+
+    /**
+     * Nonce-ul si tag-ul.
+     */
+    @Override
+    public int getTrailerSize() {
+        return Long.BYTES + TAG_SIZE;
+    }
+
+    @Override
+    public void writeTrailer(ByteBuffer buf) {
+        buf.putLong(nonce).put(getTag());
+    }
+
+    @Override
+    public void readTrailer(ByteBuffer buf) {
+        nonce = buf.getLong();
+        expectedTag = new byte[TAG_SIZE];
+        buf.get(expectedTag);
+    }
+
+    @Override
+    public boolean verifyTrailer() {
+        return expectedTag != null && verify(expectedTag);
+    }
+
+    @Override
+    protected void crypt(byte[] data, int pos) {
+        crypt(data, pos, blockSize);
+    }
+
+    @Override
+    public void crypt(byte[] data, int pos, int len) {
+        sum.accumulateAndGet(crypt(data, pos, len, counter, batch, scratch), (a, b) -> a ^ b);
+        counter += len / blockSize;
+    }
+
+    @Override
+    public boolean isParallel() {
+        return true;
+    }
+
+    /**
+     * Bucata e criptata si autentificata independent; suma ei MAC e adunata la suma comuna (ordinea nu conteaza).
+     */
+    @Override
+    protected void crypt(byte[] data, int pos, int len, long blockIndex, byte[] prev) {
+        int n = Math.min(len, BATCH);
+        sum.accumulateAndGet(crypt(data, pos, len, blockIndex, new byte[n], new byte[n]), (a, b) -> a ^ b);
+    }
+
+    @Override
+    protected void advance(long blocks, byte[] last) {
+        counter = blocks;
+    }
+
+    /**
+     * Nonce-ul, contorul si suma MAC de pana acum.
+     */
+    @Override
+    public byte[] getState() {
+        return ByteBuffer.allocate(3 * Long.BYTES).putLong(nonce).putLong(counter).putLong(sum.get()).array();
+    }
+
+    @Override
+    public void setState(byte[] state) {
+        checkState(state, 3 * Long.BYTES);
+        ByteBuffer buf = ByteBuffer.wrap(state);
+        nonce = buf.getLong();
+        counter = buf.getLong();
+        sum.set(buf.getLong());
+    }
+
+    /**
+     * Doar autentificarea criptogramei, fara decriptare (verificare rapida). Datele nu sunt modificate.
+     */
+    public void authenticate(byte[] data, int pos, int len) {
+        sum.accumulateAndGet(pmac(data, pos, len, counter, scratch), (a, b) -> a ^ b);
+        counter += len / blockSize;
+    }
+
+    /**
+     * Tag-ul pentru blocurile procesate pana acum: E_mac(suma xor E_mac(nonce xor L$) xor L$ * x).
+     */
+    public byte[] getTag() {
+        long t = sum.get() ^ mac.crypt(nonce ^ finalMask) ^ times2(finalMask);
+        byte[] tag = new byte[TAG_SIZE];
+        CrytoUtils.putLong(tag, 0, mac.crypt(t));
+        return tag;
+    }
+
+    /**
+     * Compara tag-ul calculat cu cel dat, in timp constant.
+     */
+    public boolean verify(byte[] tag) {
+        return MessageDigest.isEqual(getTag(), tag);
+    }
+
+    /**
+     * CTR si PMAC pe bucata, cate BATCH octeti odata. Intoarce suma MAC a bucatii.
+     */
+    private long crypt(byte[] data, int pos, int len, long blockIndex, byte[] keyStream, byte[] macBlocks) {
+        long partial = 0;
+        for (int end = pos + len; pos < end; ) {
+            int n = Math.min(end - pos, keyStream.length);
+            if (!encrypt) {
+                partial ^= pmac(data, pos, n, blockIndex, macBlocks); // MAC pe criptograma, inainte de decriptare
+            }
+            for (int i = 0; i < n; i += blockSize) {
+                CrytoUtils.putLong(keyStream, i, nonce + blockIndex + i / blockSize);
+            }
+            idea.crypt(keyStream, 0, n);
+            CrytoUtils.xor(data, pos, keyStream, n);
+            if (encrypt) {
+                partial ^= pmac(data, pos, n, blockIndex, macBlocks);
+            }
+            blockIndex += n / blockSize;
+            pos += n;
+        }
+        return partial;
+    }
+
+    /**
+     * Suma XOR a E_mac(C_i xor Δ_i) pentru blocurile bucatii; blocul cu indexul i foloseste Δ_(i+1).
+     */
+    private long pmac(byte[] data, int pos, int len, long blockIndex, byte[] macBlocks) {
+        long partial = 0;
+        long delta = offset(blockIndex + 1);
+        for (int end = pos + len; pos < end; ) {
+            int n = Math.min(end - pos, macBlocks.length);
+            for (int i = 0; i < n; i += blockSize) {
+                CrytoUtils.putLong(macBlocks, i, CrytoUtils.getLong(data, pos + i) ^ delta);
+                delta ^= offsets[Long.numberOfTrailingZeros(++blockIndex + 1)];
+            }
+            mac.crypt(macBlocks, 0, n);
+            for (int i = 0; i < n; i += blockSize) {
+                partial ^= CrytoUtils.getLong(macBlocks, i);
+            }
+            pos += n;
+        }
+        return partial;
+    }
+
+    /**
+     * Offset-ul Δ_i = suma L * x^j pentru bitii j din codul Gray al lui i; doua offset-uri consecutive difera prin
+     * L * x^ntz(i).
+     */
+    private long offset(long i) {
+        long gray = i ^ (i >>> 1);
+        long delta = 0;
+        for (int j = 0; gray != 0; j++, gray >>>= 1) {
+            if ((gray & 1) != 0) {
+                delta ^= offsets[j];
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Cheia MAC: primii 16 octeti din HMAC-SHA256(cheia utilizatorului, MAC_KEY_LABEL).
+     */
+    private static byte[] macKey(String key) {
+        byte[] userKey = CrytoUtils.makeKey(key, KEY_SIZE);
+        try {
+            Mac hmac = Mac.getInstance("HmacSHA256");
+            hmac.init(new SecretKeySpec(userKey, "HmacSHA256"));
+            return Arrays.copyOf(hmac.doFinal(MAC_KEY_LABEL), KEY_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available.", e);
+        } finally {
+            Arrays.fill(userKey, (byte) 0);
+        }
+    }
+
+    private static long times2(long v) {
+        return (v << 1) ^ ((v >> 63) & GF_POLY);
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.tsd.idea_cipher.modes.algorithms;
+
+import com.tsd.idea_cipher.crypto.CrytoUtils;
+import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
+import com.tsd.idea_cipher.modes.OperationMode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CBC pe bucati independente
+ * Datele sunt impartite in bucati de chunkSize octeti; fiecare bucata e inlantuita CBC separat, pornind de la
+ * vectorul initial (IV) propriu. Bucatile nu depind una de alta, deci si criptarea poate fi facuta in paralel,
+ * cu conditia ca fiecare bucata paralela sa inceapa la inceputul unei bucati CBC.
+ */
+public class ChunkedCBC extends OperationMode {
+
+    private static final int BATCH = 512; // Octeti decriptati odata
+
+    private int blockSize;
+    private long blocksPerChunk;
+    private byte[] ivs; // IV-urile bucatilor, unul dupa altul
+    private byte[] prev;
+    private byte[] newPrev;
+    private long counter; // Indexul blocului urmator
+
+    /**
+     * @param chunkSize dimensiunea unei bucati (multiplu de dimensiunea blocului)
+     * @param ivs       IV-urile bucatilor, cate un bloc pentru fiecare bucata
+     * @param cache     cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public ChunkedCBC(boolean encrypt, String key, int chunkSize, byte[] ivs, KeyScheduleCache cache) {
+        super(new IdeaCipher(key, encrypt, cache), encrypt);
+        blockSize = idea.getBlockSize();
+        if (chunkSize <= 0 || chunkSize % blockSize != 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        blocksPerChunk = chunkSize / blockSize;
+        this.ivs = ivs;
+        prev = new byte[blockSize];
+        newPrev = new byte[blockSize];
+    }
+
+    @Override
+    protected void crypt(byte[] data, int pos) {
+        if (counter % blocksPerChunk == 0) {
+            iv(counter / blocksPerChunk, prev);                 // Bucata noua: porneste de la IV-ul ei
+        }
+        counter++;
+        if (encrypt) {
+            CrytoUtils.xor(data, pos, prev, blockSize);         // Bloc XOR cu un bloc criptat anterior
+            idea.crypt(data, pos);                              // Cripteaza bloc
+            System.arraycopy(data, pos, prev, 0, blockSize);    // Salveaza blocul criptat pentru data urmatoare
+        } else {
+            System.arraycopy(data, pos, newPrev, 0, blockSize); // Salveaza blocul criptat pentru data urmatoare.
+            idea.crypt(data, pos);                              // Decripteaza bloc
+            CrytoUtils.xor(data, pos, prev, blockSize);         // Bloc XOR cu un bloc criptat anterior
+            System.arraycopy(newPrev, 0, prev, 0, blockSize);   // Actualizare bloc anterior
+        }
+    }
+
+    @Override
+    public boolean isParallel() {
+        return true;
+    }
+
+    /**
+     * Proceseaza bucata, bucata CBC cu bucata CBC. La criptare fiecare bucata paralela trebuie sa inceapa la
+     * inceputul unei bucati CBC; la decriptare poate incepe oriunde (blocul anterior e prev).
+     */
+    @Override
+    protected void crypt(byte[] data, int pos, int len, long blockIndex, byte[] prevBlock) {
+        byte[] chain = new byte[blockSize + Math.min(len, BATCH)];
+        for (int end = pos + len; pos < end; ) {
+            long inChunk = blockIndex % blocksPerChunk;
+            int n = (int) Math.min(end - pos, (blocksPerChunk - inChunk) * blockSize);
+            if (inChunk == 0) {
+                iv(blockIndex / blocksPerChunk, chain);
+            } else if (encrypt) {
+                throw new IllegalArgumentException("Parallel encryption must start at a chunk boundary.");
+            } else {
+                System.arraycopy(prevBlock != null ? prevBlock : prev, 0, chain, 0, blockSize);
+            }
+            if (encrypt) {
+                encryptChain(data, pos, n, chain);
+            } else {
+                decryptChain(data, pos, n, chain);
+            }
+            blockIndex += n / blockSize;
+            pos += n;
+        }
+    }
+
+    private void encryptChain(byte[] data, int pos, int len, byte[] chain) {
+        for (int end = pos + len; pos < end; pos += blockSize) {
+            CrytoUtils.xor(data, pos, chain, blockSize);
+            idea.crypt(data, pos);
+            System.arraycopy(data, pos, chain, 0, blockSize);
+        }
+    }
+
+    /**
+     * Ca la CBC: blocurile criptate sunt salvate dupa blocul de inlantuire, apoi decriptate cate BATCH octeti odata.
+     */
+    private void decryptChain(byte[] data, int pos, int len, byte[] chain) {
+        for (int end = pos + len; pos < end; ) {
+            int n = Math.min(end - pos, chain.length - blockSize);
+            System.arraycopy(data, pos, chain, blockSize, n);
+            idea.crypt(data, pos, n);
+            CrytoUtils.xor(data, pos, chain, n);
+            System.arraycopy(chain, n, chain, 0, blockSize);
+            pos += n;
+        }
+    }
+
+    /**
+     * Dupa o procesare paralela; la decriptare last e ultimul bloc criptat. La criptare urmatorul bloc trebuie sa
+     * inceapa o bucata noua.
+     */
+    @Override
+    protected void advance(long blocks, byte[] last) {
+        counter = blocks;
+        if (!encrypt && blocks > 0) {
+            System.arraycopy(last, 0, prev, 0, blockSize);
+        }
+    }
+
+    @Override
+    public byte[] getState() {
+        return ByteBuffer.allocate(Long.BYTES + blockSize).putLong(counter).put(prev).array();
+    }
+
+    @Override
+    public void setState(byte[] state) {
+        checkState(state, Long.BYTES + blockSize);
+        counter = ByteBuffer.wrap(state).getLong();
+        System.arraycopy(state, Long.BYTES, prev, 0, blockSize);
+    }
+
+    private void iv(long chunk, byte[] dst) {
+        System.arraycopy(ivs, (int) (chunk * blockSize), dst, 0, blockSize);
+    }
+}
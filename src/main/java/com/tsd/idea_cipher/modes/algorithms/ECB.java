@@ -1,6 +1,7 @@
 package com.tsd.idea_cipher.modes.algorithms;
 
 import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
 import com.tsd.idea_cipher.modes.OperationMode;
 
 
@@ -11,11 +12,38 @@ import com.tsd.idea_cipher.modes.OperationMode;
 public class ECB extends OperationMode {
 
     public ECB(boolean encrypt, String key) {
-        super(new IdeaCipher(key, encrypt), encrypt);
+        this(encrypt, key, null);
+    }
+
+    /**
+     * @param cache cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public ECB(boolean encrypt, String key, KeyScheduleCache cache) {
+        super(new IdeaCipher(key, encrypt, cache), encrypt);
     }
 
     @Override
     protected void crypt(byte[] data, int pos) {
         idea.crypt(data, pos); // Criptare / decriptare bloc
     }
+
+    @Override
+    protected long crypt(long block) {
+        return idea.crypt(block);
+    }
+
+    @Override
+    public void crypt(byte[] data, int pos, int len) {
+        idea.crypt(data, pos, len); // Mai multe blocuri odata
+    }
+
+    @Override
+    public boolean isParallel() {
+        return true;
+    }
+
+    @Override
+    protected void crypt(byte[] data, int pos, int len, long blockIndex, byte[] prev) {
+        crypt(data, pos, len); // Blocurile sunt independente, pozitia nu conteaza
+    }
 }
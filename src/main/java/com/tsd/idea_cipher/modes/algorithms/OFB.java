@@ -2,6 +2,7 @@ package com.tsd.idea_cipher.modes.algorithms;
 
 import com.tsd.idea_cipher.crypto.CrytoUtils;
 import com.tsd.idea_cipher.crypto.IdeaCipher;
+import com.tsd.idea_cipher.crypto.KeyScheduleCache;
 import com.tsd.idea_cipher.modes.OperationMode;
 
 /**
@@ -11,17 +12,55 @@ import com.tsd.idea_cipher.modes.OperationMode;
 public class OFB extends OperationMode {
 
     private int blockSize;
-    private byte[] feedback;
+    private long feedback; // Registrul de feedback
 
     public OFB(String key) {
-        super(new IdeaCipher(key, true), true);
+        this(key, null);
+    }
+
+    /**
+     * @param cache cache pentru subchei (null: subcheile sunt generate de fiecare data)
+     */
+    public OFB(String key, KeyScheduleCache cache) {
+        super(new IdeaCipher(key, true, cache), true);
         blockSize = idea.getBlockSize();
-        feedback = CrytoUtils.makeKey(key, blockSize); // Obtine vectorul initial (IV) din cheia utilizatorului
+        feedback = CrytoUtils.getLong(CrytoUtils.makeKey(key, blockSize), 0); // Vectorul initial (IV) din cheie
     }
 
     @Override
     protected void crypt(byte[] data, int pos) {
-        idea.crypt(feedback);                           // Criptare feedback
-        CrytoUtils.xor(data, pos, feedback, blockSize); // XOR pe date si feecback
+        CrytoUtils.putLong(data, pos, crypt(CrytoUtils.getLong(data, pos)));
+    }
+
+    @Override
+    protected long crypt(long block) {
+        feedback = idea.crypt(feedback);                // Criptare feedback
+        return block ^ feedback;                        // XOR pe date si feedback
+    }
+
+    /**
+     * Secvential, registrul de feedback ramane in registru intre blocuri.
+     */
+    @Override
+    public void crypt(byte[] data, int pos, int len) {
+        long register = feedback;
+        for (int end = pos + len; pos < end; pos += blockSize) {
+            register = idea.crypt(register);
+            CrytoUtils.putLong(data, pos, CrytoUtils.getLong(data, pos) ^ register);
+        }
+        feedback = register;
+    }
+
+    @Override
+    public byte[] getState() {
+        byte[] state = new byte[blockSize];
+        CrytoUtils.putLong(state, 0, feedback);
+        return state;
+    }
+
+    @Override
+    public void setState(byte[] state) {
+        checkState(state, blockSize);
+        feedback = CrytoUtils.getLong(state, 0);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,138 @@
+package com.tsd.idea_cipher.cli;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IdeaCliTest {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Test
+    public void directory() throws Exception {
+        Path dir = Files.createTempDirectory("cli");
+        Path input = Files.createDirectories(dir.resolve("input/sub"));
+        Files.write(input.resolve("a.txt"), data(1000));
+        Files.write(input.resolve("b.bin"), data(13));
+        Files.write(input.getParent().resolve("c.txt"), data(0));
+
+        // Encrypt the tree, then decrypt it back into another directory
+        assertEquals("Encrypt failed", 0, run("encrypt", "-k", KEY, "-m", "ctr", "-t", "2", "-o",
+                dir.resolve("encrypted").toString(), dir.resolve("input").toString()));
+        assertTrue("Missing file", Files.exists(dir.resolve("encrypted/sub/a.txt" + IdeaCli.CRYPT_EXT)));
+        assertEquals("Decrypt failed", 0, run("decrypt", "-k", KEY, "-m", "CTR", "-o",
+                dir.resolve("decrypted").toString(), dir.resolve("encrypted").toString()));
+
+        assertTrue("Different trees", FileUtils.contentEquals(input.resolve("a.txt").toFile(),
+                dir.resolve("decrypted/sub/a.txt").toFile()));
+        assertTrue("Different trees", FileUtils.contentEquals(input.resolve("b.bin").toFile(),
+                dir.resolve("decrypted/sub/b.bin").toFile()));
+        assertTrue("Different trees", FileUtils.contentEquals(dir.resolve("input/c.txt").toFile(),
+                dir.resolve("decrypted/c.txt").toFile()));
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void stream() {
+        byte[] data = data(100003);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        assertEquals("Encrypt failed", 0, run(new ByteArrayInputStream(data), encrypted, "encrypt", "-k", KEY, "-"));
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        assertEquals("Decrypt failed", 0, run(new ByteArrayInputStream(encrypted.toByteArray()), decrypted,
+                "decrypt", "-k", KEY, "-"));
+
+        assertArrayEquals("Different data", data, decrypted.toByteArray());
+    }
+
+    @Test
+    public void verify() throws Exception {
+        Path dir = Files.createTempDirectory("cli");
+        Path input = Files.write(dir.resolve("a.txt"), data(5000));
+        assertEquals("Encrypt failed", 0, run("encrypt", "-k", KEY, "-m", "ctr_pmac", input.toString()));
+        Path encrypted = dir.resolve("a.txt" + IdeaCli.CRYPT_EXT);
+        assertEquals("Verify failed", 0, run("verify", "-k", KEY, encrypted.toString()));
+
+        // A modified file fails the verification
+        byte[] data = Files.readAllBytes(encrypted);
+        data[10] ^= 1;
+        Files.write(encrypted, data);
+        assertEquals("Wrong exit code", 1, run("verify", "-k", KEY, encrypted.toString()));
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void inPlace() throws Exception {
+        Path dir = Files.createTempDirectory("cli");
+        Files.write(dir.resolve("a.txt"), data(30000));
+        Files.write(dir.resolve("b.txt"), data(7));
+        assertEquals("Encrypt failed", 0, run("encrypt", "-k", KEY, "-i", dir.toString()));
+        assertFalse("Not encrypted", Arrays.equals(data(30000), Files.readAllBytes(dir.resolve("a.txt"))));
+        assertEquals("Wrong size", 16, Files.size(dir.resolve("b.txt")));
+        assertEquals("Decrypt failed", 0, run("decrypt", "-k", KEY, "-i", dir.toString()));
+
+        assertArrayEquals("Different data", data(30000), Files.readAllBytes(dir.resolve("a.txt")));
+        assertArrayEquals("Different data", data(7), Files.readAllBytes(dir.resolve("b.txt")));
+        assertEquals("Extra files", 2, dir.toFile().list().length);
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void pack() throws Exception {
+        Path dir = Files.createTempDirectory("cli");
+        Path input = Files.createDirectories(dir.resolve("input/sub"));
+        Files.write(input.resolve("a.txt"), data(1000));
+        Files.write(input.getParent().resolve("b.txt"), data(5));
+        Path archive = dir.resolve("files.pak");
+        assertEquals("Pack failed", 0, run("pack", "-k", KEY, "-o", archive.toString(),
+                dir.resolve("input").toString()));
+
+        // Only the given member is extracted
+        Path out = dir.resolve("out");
+        assertEquals("Unpack failed", 0, run("unpack", "-k", KEY, "-o", out.toString(), archive.toString(),
+                "sub/a.txt"));
+        assertArrayEquals("Different data", data(1000), Files.readAllBytes(out.resolve("sub/a.txt")));
+        assertFalse("Extra member", Files.exists(out.resolve("b.txt")));
+        assertEquals("Wrong exit code", 1, run("unpack", "-k", "other key", "-o", out.toString(),
+                archive.toString()));
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void usage() {
+        assertEquals("Wrong exit code", 2, run("encrypt", "-k", KEY));
+        assertEquals("Wrong exit code", 2, run("encrypt", "-k", KEY, "-m", "XYZ", "file"));
+        assertEquals("Wrong exit code", 2, run("compress", "-k", KEY, "file"));
+        assertEquals("Wrong exit code", 2, run("verify", "-k", KEY, "-m", "CBC", "file"));
+        assertEquals("Wrong exit code", 2, run("encrypt", "-k", KEY, "-i", "-o", "out", "file"));
+        assertEquals("Wrong exit code", 2, run("pack", "-k", KEY, "file"));
+        assertEquals("Wrong exit code", 2, run("decrypt", "-k", KEY, "-u", "file"));
+        assertEquals("Wrong exit code", 2, run("encrypt", "-k", KEY, "-r", "1", "a", "b"));
+        assertEquals("Wrong exit code", 2, run("encrypt", "-k", KEY, "-r", "1", "-"));
+        assertEquals("Wrong exit code", 2, run("encrypt", "-k", KEY, "-r", "1", "logs/*.txt"));
+        assertEquals("Wrong exit code", 2, run("encrypt", "-k", KEY, "-r", "1", "-i", "file"));
+    }
+
+    private static int run(String... args) {
+        return run(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), args);
+    }
+
+    private static int run(ByteArrayInputStream in, ByteArrayOutputStream out, String... args) {
+        PrintStream err = new PrintStream(new ByteArrayOutputStream());
+        return new IdeaCli(in, new PrintStream(out), err).run(args);
+    }
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
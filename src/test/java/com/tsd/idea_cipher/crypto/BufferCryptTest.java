@@ -0,0 +1,121 @@
+package com.tsd.idea_cipher.crypto;
+
+import com.tsd.idea_cipher.modes.OperationMode;
+import com.tsd.idea_cipher.modes.algorithms.CBC;
+import com.tsd.idea_cipher.modes.algorithms.CFB;
+import com.tsd.idea_cipher.modes.algorithms.CTR;
+import com.tsd.idea_cipher.modes.algorithms.ECB;
+import com.tsd.idea_cipher.modes.algorithms.OFB;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class BufferCryptTest {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Test
+    public void cryptBuffer() {
+        byte[] data = new byte[0x2000 * 3 + 64];
+        new Random(5).nextBytes(data);
+        byte[] expected = data.clone();
+        new IdeaCipher(KEY, true).crypt(expected, 0, expected.length);
+
+        // Heap buffer with an array offset
+        ByteBuffer heap = ByteBuffer.wrap(new byte[data.length + 16], 8, data.length).slice();
+        heap.put(data).flip();
+        new IdeaCipher(KEY, true).crypt(heap);
+        assertEquals("Wrong position", heap.limit(), heap.position());
+        heap.flip();
+        byte[] result = new byte[data.length];
+        heap.get(result);
+        assertArrayEquals("Different heap data", expected, result);
+
+        // Direct buffer, crypted in place block by block
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        new IdeaCipher(KEY, true).crypt(direct);
+        direct.flip();
+        direct.get(result);
+        assertArrayEquals("Different direct data", expected, result);
+
+        // The byte order of the buffer does not change the blocks
+        ByteBuffer little = ByteBuffer.allocateDirect(data.length).order(ByteOrder.LITTLE_ENDIAN);
+        little.put(data).flip();
+        new IdeaCipher(KEY, true).crypt(little);
+        little.flip();
+        little.get(result);
+        assertArrayEquals("Different little-endian data", expected, result);
+    }
+
+    @Test
+    public void directModes() {
+        CTR ctr = new CTR(true, KEY);
+        long nonce = ctr.getNonce();
+        List<Supplier<OperationMode>> modes = Arrays.asList(
+                () -> new ECB(true, KEY), () -> new CBC(true, KEY), () -> new CBC(false, KEY),
+                () -> new OFB(KEY), () -> new CFB(true, KEY, 2), () -> {
+                    CTR mode = new CTR(true, KEY);
+                    mode.setNonce(nonce);
+                    return mode;
+                });
+        byte[] data = new byte[1000];
+        new Random(7).nextBytes(data);
+        for (Supplier<OperationMode> supplier : modes) {
+            OperationMode mode = supplier.get();
+            byte[] expected = data.clone();
+            mode.crypt(expected, 0, expected.length);
+
+            // Two direct slices: the mode state continues from the first one
+            OperationMode direct = supplier.get();
+            ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
+            buf.put(data).flip();
+            buf.limit(360);
+            direct.crypt(buf);
+            buf.limit(data.length);
+            direct.crypt(buf);
+            byte[] result = new byte[data.length];
+            buf.flip();
+            buf.get(result);
+            assertArrayEquals(mode.getClass().getSimpleName() + ": different direct data", expected, result);
+        }
+    }
+
+    @Test
+    public void scatterGather() {
+        byte[] data = new byte[1000];
+        new Random(5).nextBytes(data);
+        byte[] expected = data.clone();
+        new CBC(true, KEY).crypt(expected, 0, expected.length);
+
+        // Buffers with sizes that split blocks, some of them direct or empty
+        int[] sizes = {3, 1, 0, 12, 5, 100, 7, 1, 1, 1, 1, 1, 1, 1, 865};
+        ByteBuffer[] buffers = new ByteBuffer[sizes.length];
+        for (int i = 0, pos = 0; i < sizes.length; pos += sizes[i], i++) {
+            buffers[i] = i % 2 == 0 ? ByteBuffer.allocate(sizes[i]) : ByteBuffer.allocateDirect(sizes[i]);
+            buffers[i].put(data, pos, sizes[i]).flip();
+        }
+        OperationMode cbc = new CBC(true, KEY);
+        cbc.crypt(buffers, 0, buffers.length);
+
+        byte[] result = new byte[data.length];
+        for (int i = 0, pos = 0; i < sizes.length; pos += sizes[i], i++) {
+            assertFalse("Buffer not consumed", buffers[i].hasRemaining());
+            buffers[i].flip();
+            buffers[i].get(result, pos, sizes[i]);
+        }
+        assertArrayEquals("Different data", expected, result);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompleteBlock() {
+        new IdeaCipher(KEY, true).crypt(ByteBuffer.allocate(12));
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.Test;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -25,6 +26,22 @@ public class IdeaCipherTest {
         assertArrayEquals("Different data", data, input);
     }
 
+    @Test
+    public void cryptLong() {
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8, 0, 0, (byte) 0xFF, (byte) 0x80, 0, 0, 9, 10};
+        for (boolean encrypt : new boolean[]{true, false}) {
+            IdeaCipher idea = new IdeaCipher("asdfasdfasdfasdf", encrypt);
+            for (int pos = 0; pos < data.length; pos += 8) {
+                byte[] expected = data.clone();
+                idea.crypt(expected, pos);
+                long block = idea.crypt(CrytoUtils.getLong(data, pos));
+                byte[] actual = data.clone();
+                CrytoUtils.putLong(actual, pos, block);
+                assertArrayEquals("Different data", expected, actual);
+            }
+        }
+    }
+
     @Test
     public void generateSubkeys() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
         byte[] userKey = {0,1,0,2,0,3,0,4,0,5,0,6,0,7,0,8};
@@ -115,6 +132,54 @@ public class IdeaCipherTest {
         }
     }
 
+    @Test
+    public void mulEdgeCases() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        // 0 and 0x10000 both stand for 2^16
+        int[] values = {0, 1, 2, 3, 0x7FFF, 0x8000, 0x8001, 0xFFFE, 0xFFFF, 0x10000};
+
+        Method method = IdeaCipher.class.getDeclaredMethod("mul", int.class, int.class);
+        method.setAccessible(true);
+
+        for (int x : values) {
+            for (int y : values) {
+                int res = (int) method.invoke(null, x, y);
+                if (x == 0 && y == 0) {
+                    // Kept as in the original implementation (2^16 * 2^16 would be 1), existing cryptograms depend on it
+                    assertEquals("Incorrect multiplication 0 * 0", 0, res);
+                    continue;
+                }
+                long a = (x & 0xFFFF) == 0 ? 0x10000 : x;
+                long b = (y & 0xFFFF) == 0 ? 0x10000 : y;
+                assertEquals("Incorrect multiplication " + x + " * " + y, (int) (a * b % 0x10001) & 0xFFFF, res);
+            }
+        }
+    }
+
+    @Test
+    public void cryptBulk() {
+        // Lengths with a tail after the groups of 4 blocks, and long enough for the lanes engine
+        int[] blocks = {1, 2, 3, 4, 5, 6, 7, 9, 15, 17, 70};
+        byte[] data = new byte[71 * 8];
+        new Random(7).nextBytes(data);
+        data[8] = data[9] = 0;      // Zero sub-blocks
+        data[44] = data[45] = 0;
+
+        for (String key : new String[]{"asdfasdfasdfasdf", "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ"}) {
+            for (boolean encrypt : new boolean[]{true, false}) {
+                IdeaCipher idea = new IdeaCipher(key, encrypt);
+                for (int n : blocks) {
+                    byte[] expected = data.clone();
+                    for (int pos = 8; pos < 8 + n * 8; pos += 8) {
+                        idea.crypt(expected, pos);
+                    }
+                    byte[] bulk = data.clone();
+                    idea.crypt(bulk, 8, n * 8);
+                    assertArrayEquals("Different data for " + n + " blocks", expected, bulk);
+                }
+            }
+        }
+    }
+
     @Test
     public void mulInv() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
         int[] num = {0, 1, 100,   1000,  10000, 65536, 65537, 65538};
@@ -0,0 +1,37 @@
+package com.tsd.idea_cipher.crypto;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IdeaLanesTest {
+    @Test
+    public void crypt() throws NoSuchFieldException, IllegalAccessException {
+        // Keys with and without zero subkeys
+        String[] keys = {"asdfasdfasdfasdf", "", "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ"};
+        byte[] data = new byte[IdeaLanes.LANES * 8];
+        new Random(11).nextBytes(data);
+        data[0] = data[1] = 0;      // Zero sub-blocks
+        data[14] = data[15] = 0;
+
+        Field subKey = IdeaCipher.class.getDeclaredField("subKey");
+        subKey.setAccessible(true);
+
+        for (String key : keys) {
+            for (boolean encrypt : new boolean[]{true, false}) {
+                IdeaCipher idea = new IdeaCipher(key, encrypt);
+                byte[] expected = data.clone();
+                for (int pos = 0; pos < expected.length; pos += 8) {
+                    idea.crypt(expected, pos);
+                }
+                byte[] lanes = data.clone();
+                IdeaLanes.crypt((int[]) subKey.get(idea), lanes, 0, IdeaLanes.LANES);
+
+                assertArrayEquals("Different data", expected, lanes);
+            }
+        }
+    }
+}
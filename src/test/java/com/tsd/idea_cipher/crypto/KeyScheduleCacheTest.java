@@ -0,0 +1,53 @@
+package com.tsd.idea_cipher.crypto;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyScheduleCacheTest {
+    @Test
+    public void get() {
+        KeyScheduleCache cache = new KeyScheduleCache(4);
+        byte[] key = CrytoUtils.makeKey("asdfasdfasdfasdf", 16);
+
+        int[] first = cache.get(key, true);
+        int[] second = cache.get(key, true);
+        int[] decrypt = cache.get(key, false);
+
+        assertSame("Not cached", first, second);
+        assertArrayEquals("Different subkeys", IdeaCipher.schedule(key, true), first);
+        assertArrayEquals("Different inverted subkeys", IdeaCipher.schedule(key, false), decrypt);
+        assertEquals("Wrong hits", 1, cache.getHits());
+        assertEquals("Wrong misses", 2, cache.getMisses());
+    }
+
+    @Test
+    public void evict() {
+        KeyScheduleCache cache = new KeyScheduleCache(2);
+        byte[] a = CrytoUtils.makeKey("a", 16);
+        byte[] b = CrytoUtils.makeKey("b", 16);
+        byte[] c = CrytoUtils.makeKey("c", 16);
+
+        cache.get(a, true);
+        cache.get(b, true);
+        cache.get(a, true);     // a is now the most recently used
+        cache.get(c, true);     // evicts b
+        long misses = cache.getMisses();
+        cache.get(a, true);
+        assertEquals("a was evicted", misses, cache.getMisses());
+        cache.get(b, true);
+        assertEquals("b was not evicted", misses + 1, cache.getMisses());
+        assertEquals("Wrong size", 2, cache.size());
+    }
+
+    @Test
+    public void crypt() {
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8};
+        byte[] input = data.clone();
+        KeyScheduleCache cache = new KeyScheduleCache(4);
+        new IdeaCipher("asdfasdfasdfasdf", true, cache).crypt(input);
+        new IdeaCipher("asdfasdfasdfasdf", false, cache).crypt(input);
+
+        assertArrayEquals("Different data", data, input);
+    }
+}
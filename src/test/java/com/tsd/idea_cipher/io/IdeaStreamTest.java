@@ -0,0 +1,114 @@
+package com.tsd.idea_cipher.io;
+
+import com.tsd.idea_cipher.modes.DataLength;
+import com.tsd.idea_cipher.modes.OperationMode;
+import com.tsd.idea_cipher.modes.algorithms.CBC;
+import com.tsd.idea_cipher.modes.algorithms.CFB;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IdeaStreamTest {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+    private static final int[] SIZES = {0, 1, 7, 8, 9, 100, 0x10000 - 3, 0x10000 + 16, 200003};
+
+    @Test
+    public void outputStream() throws IOException {
+        for (int size : SIZES) {
+            byte[] data = data(size);
+            ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+            try (OutputStream out = new IdeaOutputStream(encrypted, new CBC(true, KEY))) {
+                // Uneven writes
+                for (int pos = 0; pos < size; pos += 1000) {
+                    out.write(data, pos, Math.min(1000, size - pos));
+                }
+            }
+            assertArrayEquals("Different cryptogram " + size, cryptogram(data), encrypted.toByteArray());
+
+            ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            try (OutputStream out = new IdeaOutputStream(decrypted, new CBC(false, KEY))) {
+                out.write(encrypted.toByteArray());
+            }
+            assertArrayEquals("Different data " + size, data, decrypted.toByteArray());
+        }
+    }
+
+    @Test
+    public void inputStream() throws IOException {
+        for (int size : SIZES) {
+            byte[] data = data(size);
+            byte[] encrypted;
+            try (InputStream in = new IdeaInputStream(new ByteArrayInputStream(data), new CBC(true, KEY))) {
+                encrypted = IOUtils.toByteArray(in);
+            }
+            assertArrayEquals("Different cryptogram " + size, cryptogram(data), encrypted);
+
+            byte[] decrypted;
+            try (InputStream in = new IdeaInputStream(new ByteArrayInputStream(encrypted), new CBC(false, KEY))) {
+                decrypted = IOUtils.toByteArray(in);
+            }
+            assertArrayEquals("Different data " + size, data, decrypted);
+        }
+    }
+
+    @Test
+    public void channels() throws IOException {
+        byte[] data = data(200003);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (WritableByteChannel out = new IdeaWritableByteChannel(Channels.newChannel(encrypted),
+                new CFB(true, KEY))) {
+            out.write(ByteBuffer.wrap(data));
+        }
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        try (ReadableByteChannel in = new IdeaReadableByteChannel(
+                Channels.newChannel(new ByteArrayInputStream(encrypted.toByteArray())), new CFB(false, KEY))) {
+            ByteBuffer buf = ByteBuffer.allocate(4093);
+            while (in.read(buf) >= 0) {
+                decrypted.write(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+        }
+
+        assertArrayEquals("Different data", data, decrypted.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidCryptogram() throws IOException {
+        byte[] encrypted = cryptogram(data(100));
+        // Missing last block
+        InputStream in = new ByteArrayInputStream(Arrays.copyOf(encrypted, encrypted.length - 8));
+        IOUtils.toByteArray(new IdeaInputStream(in, new CBC(false, KEY)));
+    }
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Cryptogram in the FileCipher format: data padded with zeros, then the data length block.
+     */
+    private static byte[] cryptogram(byte[] data) {
+        int padded = (data.length + 7) / 8 * 8;
+        byte[] expected = Arrays.copyOf(data, padded + 8);
+        System.arraycopy(DataLength.pack(data.length), 0, expected, padded, 8);
+        OperationMode opMod = new CBC(true, KEY);
+        opMod.crypt(expected, 0, expected.length);
+        return expected;
+    }
+}
@@ -0,0 +1,124 @@
+package com.tsd.idea_cipher.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IdeaVolumeChannelTest {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Test
+    public void randomAccess() throws Exception {
+        Path dir = Files.createTempDirectory("volume");
+        Path file = dir.resolve("volume.bin");
+        byte[] model = new byte[50000];
+        int modelSize = 0;
+        Random random = new Random(5);
+
+        // Random writes and reads against an in-memory copy, small sectors so runs span many of them
+        try (IdeaVolumeChannel volume = open(file, 64)) {
+            for (int i = 0; i < 500; i++) {
+                int pos = random.nextInt(40000);
+                int len = random.nextInt(i % 10 == 0 ? 9000 : 200);
+                if (random.nextBoolean()) {
+                    byte[] data = new byte[len];
+                    random.nextBytes(data);
+                    volume.position(pos);
+                    assertEquals("Wrong write count", len, volume.write(ByteBuffer.wrap(data)));
+                    System.arraycopy(data, 0, model, pos, len);
+                    modelSize = Math.max(modelSize, pos + len);
+                } else {
+                    ByteBuffer dst = ByteBuffer.allocate(len);
+                    volume.position(pos);
+                    int n = volume.read(dst);
+                    int expected = Math.min(len, modelSize - pos);
+                    assertEquals("Wrong read count", expected <= 0 ? (len == 0 ? 0 : -1) : expected, n);
+                    if (n > 0) {
+                        assertArrayEquals("Different data", Arrays.copyOfRange(model, pos, pos + n),
+                                Arrays.copyOf(dst.array(), n));
+                    }
+                }
+                assertEquals("Wrong size", modelSize, volume.size());
+            }
+        }
+
+        // Reopen: size and data come back from the file, truncation clears the tail
+        try (IdeaVolumeChannel volume = open(file, 4096)) {
+            assertEquals("Wrong sector size", 64, volume.getSectorSize());
+            assertArrayEquals("Different data", Arrays.copyOf(model, modelSize), readAll(volume));
+            volume.truncate(1000);
+            volume.position(1100);
+            volume.write(ByteBuffer.wrap(new byte[]{1}));
+            byte[] expected = Arrays.copyOf(model, 1101);
+            Arrays.fill(expected, 1000, 1100, (byte) 0);
+            expected[1100] = 1;
+            assertArrayEquals("Different data after truncate", expected, readAll(volume));
+        }
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void sparse() throws Exception {
+        Path dir = Files.createTempDirectory("volume");
+        Path file = dir.resolve("volume.bin");
+        long far = 1L << 28;
+
+        // A write far away touches one sector; the gap reads as zeros
+        try (IdeaVolumeChannel volume = IdeaVolumeChannel.open(file, KEY)) {
+            volume.position(far);
+            volume.write(ByteBuffer.wrap("end".getBytes("US-ASCII")));
+            assertEquals("Wrong size", far + 3, volume.size());
+            ByteBuffer dst = ByteBuffer.allocate(16);
+            volume.position(far - 13);
+            assertEquals("Wrong read count", 16, volume.read(dst));
+            byte[] expected = new byte[16];
+            expected[13] = 'e';
+            expected[14] = 'n';
+            expected[15] = 'd';
+            assertArrayEquals("Different data", expected, dst.array());
+        }
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongKey() throws Exception {
+        Path dir = Files.createTempDirectory("volume");
+        Path file = dir.resolve("volume.bin");
+        try (IdeaVolumeChannel volume = IdeaVolumeChannel.open(file, KEY)) {
+            volume.write(ByteBuffer.wrap(new byte[100]));
+        }
+        try {
+            IdeaVolumeChannel.open(file, "another key").close();
+        } finally {
+            Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    private static IdeaVolumeChannel open(Path file, int sectorSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return new IdeaVolumeChannel(channel, KEY, sectorSize, null);
+    }
+
+    private static byte[] readAll(IdeaVolumeChannel volume) throws IOException {
+        ByteBuffer dst = ByteBuffer.allocate((int) volume.size());
+        volume.position(0);
+        while (dst.hasRemaining() && volume.read(dst) >= 0) {
+            // Read until the end
+        }
+        return dst.array();
+    }
+}
@@ -0,0 +1,88 @@
+package com.tsd.idea_cipher.metrics;
+
+import com.tsd.idea_cipher.modes.FileProcessor;
+import com.tsd.idea_cipher.modes.OperationMode;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EngineMetricsTest {
+    @Test
+    public void histogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000, 8);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(800, histogram.getBytes());
+        assertEquals(100000, histogram.getMaxNanos());
+        assertEquals(50500, histogram.getMeanNanos(), 0.001);
+        // Upper bound of the bucket, never above the maximum
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 >= 50000 && p50 <= 65536);
+        assertEquals(100000, histogram.getPercentileNanos(99));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(99));
+    }
+
+    @Test
+    public void fileStages() throws Exception {
+        String key = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+        byte[] data = new byte[100000];
+        new Random(7).nextBytes(data);
+        Path dir = Files.createTempDirectory("metrics");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        Path output = dir.resolve("output.bin");
+
+        EngineMetrics metrics = new EngineMetrics();
+        FileProcessor processor = new FileProcessor(input.toString(), output.toString(), key, true,
+                OperationMode.Mode.CBC);
+        processor.setMetrics(metrics);
+        processor.cryptFile();
+
+        assertEquals(1, metrics.getFiles());
+        assertEquals(0, metrics.getFailedFiles());
+        assertEquals((data.length + 7) / 8 * 8, metrics.getBytes());
+        assertEquals(1, metrics.getHistogram(EngineMetrics.Stage.KEY_SETUP).getCount());
+        assertEquals(data.length, metrics.getHistogram(EngineMetrics.Stage.READ).getBytes());
+        assertTrue(metrics.getHistogram(EngineMetrics.Stage.WRITE).getCount() > 0);
+        assertTrue(metrics.getBlocksPerSecond() > 0);
+
+        // Missing input file
+        processor = new FileProcessor(dir.resolve("missing.bin").toString(), output.toString(), key, true,
+                OperationMode.Mode.CBC);
+        processor.setMetrics(metrics);
+        try {
+            processor.cryptFile();
+            fail("Missing input file");
+        } catch (IOException expected) {
+            assertEquals(1, metrics.getFailedFiles());
+        }
+        metrics.reset();
+        assertEquals(0, metrics.getFiles());
+        assertEquals(0, metrics.getBytes());
+
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void mbean() throws Exception {
+        EngineMetrics.getDefault();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(EngineMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertNotNull(server.getAttribute(name, "KeyCacheHitRate"));
+        assertNotNull(server.getAttribute(name, "CryptP99Micros"));
+    }
+}
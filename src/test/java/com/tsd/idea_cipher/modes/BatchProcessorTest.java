@@ -0,0 +1,70 @@
+package com.tsd.idea_cipher.modes;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BatchProcessorTest {
+    @Test
+    public void processTree() throws Exception {
+        String key = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+        Path dir = Files.createTempDirectory("batch");
+        Path input = Files.createDirectories(dir.resolve("input"));
+        Files.createDirectories(input.resolve("a/b"));
+        int[] sizes = {0, 7, 8, 4099, 3 * FileProcessor.BUF_SIZE + 5};
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = new byte[sizes[i]];
+            new Random(i).nextBytes(data);
+            Files.write(input.resolve(i % 2 == 0 ? "a/b" : "a").resolve("f" + i), data);
+        }
+
+        // More files than workers, shared buffers, nested directories
+        BatchProcessor encrypt = new BatchProcessor(key, true, OperationMode.Mode.CBC);
+        encrypt.setWorkers(2);
+        BatchProcessor.Result result = encrypt.processTree(input, dir.resolve("encrypted"), name -> name + ".cif");
+        assertEquals("Wrong file count", sizes.length, result.getFiles());
+        assertEquals("Wrong failed count", 0, result.getFailed());
+        assertEquals("Wrong byte count", 7 + 8 + 4099 + 3 * FileProcessor.BUF_SIZE + 5, result.getBytes());
+        assertTrue("Missing file", Files.exists(dir.resolve("encrypted/a/b/f4.cif")));
+
+        BatchProcessor decrypt = new BatchProcessor(key, false, OperationMode.Mode.CBC);
+        decrypt.setWorkers(3);
+        decrypt.processTree(dir.resolve("encrypted"), dir.resolve("decrypted"),
+                name -> name.substring(0, name.length() - 4));
+        assertTrue("Different trees", FileUtils.contentEquals(input.resolve("a/b/f4").toFile(),
+                dir.resolve("decrypted/a/b/f4").toFile()));
+        assertTrue("Different trees", FileUtils.contentEquals(input.resolve("a/f3").toFile(),
+                dir.resolve("decrypted/a/f3").toFile()));
+        assertTrue("Different trees", FileUtils.contentEquals(input.resolve("a/b/f0").toFile(),
+                dir.resolve("decrypted/a/b/f0").toFile()));
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void failedFile() throws Exception {
+        Path dir = Files.createTempDirectory("batch");
+        Path bad = Files.write(dir.resolve("bad.bin"), new byte[5]); // Not a valid encrypted file
+
+        BatchProcessor decrypt = new BatchProcessor("6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ", false, OperationMode.Mode.ECB);
+        int[] errors = new int[1];
+        decrypt.setListener((job, error) -> {
+            if (error != null) {
+                errors[0]++;
+            }
+        });
+        // Errors are counted and reported, the other files are still processed
+        BatchProcessor.Result result = decrypt.process(Arrays.asList(
+                new BatchProcessor.Job(bad, dir.resolve("out/bad.dec")),
+                new BatchProcessor.Job(dir.resolve("missing.bin"), dir.resolve("out/missing.dec"))));
+        assertEquals("Wrong failed count", 2, result.getFailed());
+        assertEquals("Wrong listener count", 2, errors[0]);
+        assertEquals("Wrong file count", 0, result.getFiles());
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+}
@@ -0,0 +1,54 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.modes.algorithms.CFB;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CFBTest {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+    private static final int[] SEGMENT_SIZES = {1, 2, 4, 8};
+
+    @Test
+    public void crypt() {
+        byte[] data = new byte[1024];
+        new Random(5).nextBytes(data);
+        for (int segmentSize : SEGMENT_SIZES) {
+            byte[] input = data.clone();
+            // Encrypt
+            new CFB(true, KEY, segmentSize).crypt(input, 0, input.length);
+            assertFalse("Not encrypted", Arrays.equals(data, input));
+            // Decrypt
+            new CFB(false, KEY, segmentSize).crypt(input, 0, input.length);
+
+            assertArrayEquals("Different data (CFB-" + segmentSize * 8 + ")", data, input);
+        }
+    }
+
+    @Test
+    public void parallelDecrypt() {
+        byte[] data = new byte[4096];
+        new Random(5).nextBytes(data);
+        for (int segmentSize : SEGMENT_SIZES) {
+            byte[] input = data.clone();
+            new CFB(true, KEY, segmentSize).crypt(input, 0, input.length);
+            byte[] prev = Arrays.copyOfRange(input, 2040, 2048);
+            // Two independent halves
+            OperationMode cfb = new CFB(false, KEY, segmentSize);
+            assertTrue("Not parallel", cfb.isParallel());
+            cfb.crypt(input, 2048, 2048, 256, prev);
+            cfb.crypt(input, 0, 2048, 0, null);
+
+            assertArrayEquals("Different data (CFB-" + segmentSize * 8 + ")", data, input);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSegmentSize() {
+        new CFB(true, KEY, 3);
+    }
+}
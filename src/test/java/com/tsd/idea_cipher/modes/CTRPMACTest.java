@@ -0,0 +1,119 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.modes.algorithms.CTRPMAC;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CTRPMACTest {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Test
+    public void parallel() {
+        byte[] data = new byte[4096];
+        new Random(3).nextBytes(data);
+        CTRPMAC sequential = new CTRPMAC(true, KEY, null);
+        byte[] expected = data.clone();
+        sequential.crypt(expected, 0, expected.length);
+
+        // Chunks in any order give the same ciphertext and tag
+        CTRPMAC parallel = new CTRPMAC(true, KEY, null);
+        parallel.setNonce(sequential.getNonce());
+        OperationMode opMod = parallel;
+        opMod.crypt(data, 1024, 3072, 128, null);
+        opMod.crypt(data, 0, 1024, 0, null);
+
+        assertArrayEquals("Different data", expected, data);
+        assertArrayEquals("Different tag", sequential.getTag(), parallel.getTag());
+
+        // Decryption and verify-only both check the tag
+        CTRPMAC decrypt = new CTRPMAC(false, KEY, null);
+        decrypt.setNonce(sequential.getNonce());
+        CTRPMAC verify = new CTRPMAC(false, KEY, null);
+        verify.setNonce(sequential.getNonce());
+        verify.authenticate(data, 0, data.length);
+        assertArrayEquals("Verify changed the data", expected, data);
+        decrypt.crypt(data, 0, data.length);
+        assertTrue("Wrong tag", decrypt.verify(sequential.getTag()));
+        assertTrue("Wrong tag", verify.verify(sequential.getTag()));
+    }
+
+    @Test
+    public void trailer() {
+        byte[] data = new byte[1000];
+        new Random(7).nextBytes(data);
+        OperationMode encrypt = new CTRPMAC(true, KEY, null);
+        encrypt.crypt(data, 0, data.length);
+        ByteBuffer trailer = ByteBuffer.allocate(encrypt.getTrailerSize());
+        encrypt.writeTrailer(trailer);
+        assertFalse("Trailer not filled", trailer.hasRemaining());
+
+        // The nonce and the tag come back from the trailer
+        for (int flip : new int[]{-1, 0, 999}) {
+            byte[] modified = data.clone();
+            if (flip >= 0) {
+                modified[flip] ^= 1;
+            }
+            OperationMode decrypt = new CTRPMAC(false, KEY, null);
+            trailer.flip();
+            decrypt.readTrailer(trailer);
+            decrypt.crypt(modified, 0, modified.length);
+            assertEquals("Wrong verification (" + flip + ")", flip < 0, decrypt.verifyTrailer());
+        }
+        assertFalse("Verified without a trailer", new CTRPMAC(false, KEY, null).verifyTrailer());
+    }
+
+    @Test
+    public void cryptFile() throws Exception {
+        Path dir = Files.createTempDirectory("pmac");
+        for (int size : new int[]{0, 13, 3 * FileProcessor.BUF_SIZE + 5}) {
+            byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            Path input = Files.write(dir.resolve("input.bin"), data);
+            for (int threads : new int[]{1, 4}) {
+                crypt(input, dir.resolve("encrypted.bin"), true, threads);
+                new FileProcessor(dir.resolve("encrypted.bin").toString(), null, KEY, false,
+                        OperationMode.Mode.CTR_PMAC).verifyFile();
+                crypt(dir.resolve("encrypted.bin"), dir.resolve("decrypted.bin"), false, 5 - threads);
+                assertArrayEquals("Different data (" + size + ")", data,
+                        Files.readAllBytes(dir.resolve("decrypted.bin")));
+            }
+        }
+
+        // One flipped bit is detected by the verification and by the decryption
+        byte[] encrypted = Files.readAllBytes(dir.resolve("encrypted.bin"));
+        encrypted[1000] ^= 4;
+        Files.write(dir.resolve("encrypted.bin"), encrypted);
+        try {
+            new FileProcessor(dir.resolve("encrypted.bin").toString(), null, KEY, false,
+                    OperationMode.Mode.CTR_PMAC).verifyFile();
+            fail("Modified file verified");
+        } catch (IOException e) {
+            // Expected
+        }
+        try {
+            crypt(dir.resolve("encrypted.bin"), dir.resolve("decrypted.bin"), false, 4);
+            fail("Modified file decrypted");
+        } catch (IOException e) {
+            assertEquals("Plaintext kept", 0, Files.size(dir.resolve("decrypted.bin")));
+        }
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    private static void crypt(Path input, Path output, boolean encrypt, int threads) throws IOException {
+        FileProcessor processor = new FileProcessor(input.toString(), output.toString(), KEY, encrypt,
+                OperationMode.Mode.CTR_PMAC);
+        processor.setThreads(threads);
+        processor.setMapThreshold(threads == 1 ? 0 : Long.MAX_VALUE);
+        processor.cryptFile();
+    }
+}
@@ -0,0 +1,78 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.modes.algorithms.CTR;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CTRTest {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Test
+    public void crypt() {
+        byte[] data = new byte[1024];
+        new Random(3).nextBytes(data);
+        byte[] input = data.clone();
+        // Encrypt
+        CTR encrypt = new CTR(true, KEY);
+        encrypt.crypt(input, 0, input.length);
+        assertFalse("Not encrypted", Arrays.equals(data, input));
+        // Decrypt, with the nonce of the cryptogram
+        CTR decrypt = new CTR(false, KEY);
+        decrypt.setNonce(encrypt.getNonce());
+        decrypt.crypt(input, 0, input.length);
+
+        assertArrayEquals("Different data", data, input);
+    }
+
+    @Test
+    public void nonce() {
+        // The same data and key give different key streams
+        byte[] a = new byte[64];
+        byte[] b = new byte[64];
+        new CTR(true, KEY).crypt(a, 0, a.length);
+        new CTR(true, KEY).crypt(b, 0, b.length);
+        assertFalse("Key stream reused", Arrays.equals(a, b));
+    }
+
+    @Test
+    public void seek() {
+        byte[] data = new byte[1024];
+        new Random(3).nextBytes(data);
+        byte[] expected = data.clone();
+        CTR first = new CTR(true, KEY);
+        first.crypt(expected, 0, expected.length);
+
+        // Random access to block 100, relative to the nonce
+        CTR ctr = new CTR(true, KEY);
+        ctr.setNonce(first.getNonce());
+        ctr.seek(100);
+        byte[] block = Arrays.copyOfRange(data, 800, 808);
+        ctr.crypt(block, 0, block.length);
+
+        assertArrayEquals("Different block", Arrays.copyOfRange(expected, 800, 808), block);
+    }
+
+    @Test
+    public void parallel() {
+        byte[] data = new byte[1024];
+        new Random(3).nextBytes(data);
+        byte[] expected = data.clone();
+        CTR sequential = new CTR(true, KEY);
+        sequential.crypt(expected, 0, expected.length);
+
+        // Two independent halves, in reverse order
+        CTR halves = new CTR(true, KEY);
+        halves.setNonce(sequential.getNonce());
+        OperationMode ctr = halves;
+        assertTrue("Not parallel", ctr.isParallel());
+        ctr.crypt(data, 512, 512, 64, null);
+        ctr.crypt(data, 0, 512, 0, null);
+
+        assertArrayEquals("Different data", expected, data);
+    }
+}
@@ -0,0 +1,109 @@
+package com.tsd.idea_cipher.modes;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CheckpointJournalTest {
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+    private static final int INTERVAL = 16384;
+
+    @Test
+    public void resume() throws Exception {
+        byte[] data = new byte[100000 + 5];
+        new Random(7).nextBytes(data);
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        for (OperationMode.Mode mode : new OperationMode.Mode[]{OperationMode.Mode.CBC, OperationMode.Mode.CFB,
+                OperationMode.Mode.OFB, OperationMode.Mode.CTR}) {
+            Path expected = dir.resolve("expected.cif");
+            Path output = dir.resolve("output.cif");
+            Path decrypted = dir.resolve("output.dec");
+            new FileProcessor(input.toString(), expected.toString(), KEY, true, mode).cryptFile();
+
+            // Interrupted after the third checkpoint
+            FileProcessor processor = processor(input, output, true, mode);
+            processor.setListener(new FileProcessor.Listener() {
+                @Override
+                public void progress(long workDone, long max) {
+                    if (workDone >= 3 * INTERVAL) {
+                        throw new IllegalStateException("Crash");
+                    }
+                }
+            });
+            try {
+                processor.cryptFile();
+                fail("Not interrupted");
+            } catch (IllegalStateException expectedCrash) {
+                assertTrue(Files.exists(CheckpointJournal.pathFor(output)));
+            }
+            byte[] committed = Arrays.copyOf(Files.readAllBytes(output), 3 * INTERVAL);
+
+            // Resumed: the committed part is not read again
+            long[] first = {-1};
+            processor = processor(input, output, true, mode);
+            processor.setListener(new FileProcessor.Listener() {
+                @Override
+                public void progress(long workDone, long max) {
+                    if (first[0] < 0) {
+                        first[0] = workDone;
+                    }
+                }
+            });
+            processor.cryptFile();
+            assertEquals(mode + ": resumed at", 3 * INTERVAL, first[0]);
+            // The resumed run continues the interrupted one (CTR: with its nonce)
+            byte[] cryptogram = Files.readAllBytes(output);
+            assertArrayEquals(mode + ": committed part changed", committed, Arrays.copyOf(cryptogram, 3 * INTERVAL));
+            if (mode != OperationMode.Mode.CTR) {
+                assertArrayEquals(mode + ": different cryptogram", Files.readAllBytes(expected), cryptogram);
+            }
+            assertFalse(Files.exists(CheckpointJournal.pathFor(output)));
+
+            processor(output, decrypted, false, mode).cryptFile();
+            assertArrayEquals(mode + ": different data", data, Files.readAllBytes(decrypted));
+            Files.delete(expected);
+            Files.delete(output);
+            Files.delete(decrypted);
+        }
+        Files.delete(input);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void otherKey() throws Exception {
+        byte[] data = new byte[50000];
+        new Random(3).nextBytes(data);
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        Path output = dir.resolve("output.cif");
+        FileProcessor processor = processor(input, output, true, OperationMode.Mode.CBC);
+        OperationMode opMod = FileProcessor.newMode(OperationMode.Mode.CBC, true, KEY, 8, null);
+        CheckpointJournal journal = new CheckpointJournal(output, input, 0, KEY, null);
+        journal.commit(INTERVAL, opMod);
+        assertEquals(INTERVAL, journal.load(opMod));
+        // A journal written with another key is ignored
+        assertEquals(-1, new CheckpointJournal(output, input, 0, "other key", null).load(opMod));
+        // A journal of other parameters is ignored
+        assertEquals(-1, new CheckpointJournal(output, input, 1, KEY, null).load(opMod));
+
+        processor.cryptFile();
+        assertFalse(Files.exists(CheckpointJournal.pathFor(output)));
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(dir);
+    }
+
+    private static FileProcessor processor(Path input, Path output, boolean encrypt, OperationMode.Mode mode) {
+        FileProcessor processor = new FileProcessor(input.toString(), output.toString(), KEY, encrypt, mode);
+        processor.setThreads(1);
+        processor.setOverlapIo(false);
+        processor.setCheckpointInterval(INTERVAL);
+        return processor;
+    }
+}
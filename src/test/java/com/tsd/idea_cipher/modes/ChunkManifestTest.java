@@ -0,0 +1,102 @@
+package com.tsd.idea_cipher.modes;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ChunkManifestTest {
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+    private static final int CHUNK = 4096;
+
+    @Test
+    public void changedChunks() throws Exception {
+        byte[] data = new byte[10 * CHUNK - 100];
+        new Random(1).nextBytes(data);
+        Path dir = Files.createTempDirectory("manifest");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        Path output = dir.resolve("input.bin.cif");
+        Path decrypted = dir.resolve("output.dec");
+        encrypt(input, output);
+        assertTrue(Files.exists(ChunkManifest.pathFor(output)));
+        byte[] before = Files.readAllBytes(output);
+
+        // Only the modified chunks are written again
+        data[3 * CHUNK + 10] ^= 1;
+        data[7 * CHUNK] ^= 1;
+        Files.write(input, data);
+        encrypt(input, output);
+        byte[] after = Files.readAllBytes(output);
+        assertArrayEquals("Chunks rewritten", new boolean[]{false, false, false, true, false, false, false, true,
+                false, false}, changedChunks(before, after));
+        decrypt(output, decrypted);
+        assertArrayEquals("Different data", data, Files.readAllBytes(decrypted));
+
+        // A longer last chunk: the same chunk count
+        data = Arrays.copyOf(data, 10 * CHUNK - 3);
+        Files.write(input, data);
+        encrypt(input, output);
+        boolean[] changed = changedChunks(after, Files.readAllBytes(output));
+        assertEquals("Chunks rewritten", 1, count(changed));
+        assertTrue("Last chunk not rewritten", changed[9]);
+        decrypt(output, decrypted);
+        assertArrayEquals("Different data", data, Files.readAllBytes(decrypted));
+
+        // Without the manifest the container is rewritten
+        before = Files.readAllBytes(output);
+        Files.delete(ChunkManifest.pathFor(output));
+        encrypt(input, output);
+        assertEquals("Chunks rewritten", 10, count(changedChunks(before, Files.readAllBytes(output))));
+
+        // Another chunk count: rewritten too
+        data = Arrays.copyOf(data, 12 * CHUNK);
+        Files.write(input, data);
+        encrypt(input, output);
+        decrypt(output, decrypted);
+        assertArrayEquals("Different data", data, Files.readAllBytes(decrypted));
+
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(ChunkManifest.pathFor(output));
+        Files.delete(decrypted);
+        Files.delete(dir);
+    }
+
+    private static void encrypt(Path input, Path output) throws Exception {
+        FileProcessor processor = new FileProcessor(input.toString(), output.toString(), KEY, true,
+                OperationMode.Mode.CBC);
+        processor.setChunkSize(CHUNK);
+        processor.setIncremental(true);
+        processor.cryptFile();
+    }
+
+    private static void decrypt(Path input, Path output) throws Exception {
+        new FileProcessor(input.toString(), output.toString(), KEY, false, OperationMode.Mode.CBC).cryptFile();
+    }
+
+    /**
+     * Chunks whose ciphertext differs between two containers with 10 chunks.
+     */
+    private static boolean[] changedChunks(byte[] a, byte[] b) {
+        int dataOffset = ChunkedContainer.HEADER_SIZE + 10 * 8;
+        boolean[] changed = new boolean[10];
+        for (int i = 0; i < changed.length; i++) {
+            int from = dataOffset + i * CHUNK;
+            changed[i] = !Arrays.equals(Arrays.copyOfRange(a, from, Math.min(a.length, from + CHUNK)),
+                    Arrays.copyOfRange(b, from, Math.min(b.length, from + CHUNK)));
+        }
+        return changed;
+    }
+
+    private static int count(boolean[] changed) {
+        int n = 0;
+        for (boolean c : changed) {
+            n += c ? 1 : 0;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,112 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.modes.algorithms.CBC;
+import com.tsd.idea_cipher.modes.algorithms.CFB;
+import com.tsd.idea_cipher.modes.algorithms.ECB;
+import org.junit.Test;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ChunkPipelineTest {
+    @Test
+    public void process() throws Exception {
+        String key = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+        int chunkSize = 4096;
+        byte[] data = new byte[chunkSize * 10 + 13];
+        new Random(7).nextBytes(data);
+        Path dir = Files.createTempDirectory("pipeline");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        Path output = dir.resolve("output.bin");
+        long outDataLen = (data.length + 7) / 8 * 8;
+
+        // Parallel
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            new ChunkPipeline(new ECB(true, key), 4, chunkSize).process(in, data.length, out, outDataLen, done -> {
+            });
+        }
+        // Sequential
+        byte[] expected = Arrays.copyOf(data, (int) outDataLen);
+        new ECB(true, key).crypt(expected, 0, expected.length);
+
+        assertArrayEquals("Different data", expected, Files.readAllBytes(output));
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void decryptChained() throws Exception {
+        String key = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+        int chunkSize = 4096;
+        byte[] data = new byte[chunkSize * 10 + 8];
+        new Random(7).nextBytes(data);
+        Path dir = Files.createTempDirectory("pipeline");
+        Path input = dir.resolve("input.bin");
+        Path output = dir.resolve("output.bin");
+
+        OperationMode[][] modes = {{new CBC(true, key), new CBC(false, key)}, {new CFB(true, key), new CFB(false, key)}};
+        for (OperationMode[] mode : modes) {
+            byte[] encrypted = data.clone();
+            mode[0].crypt(encrypted, 0, encrypted.length);
+            Files.write(input, encrypted);
+            try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                new ChunkPipeline(mode[1], 4, chunkSize).process(in, data.length, out, data.length, done -> {
+                });
+            }
+            assertArrayEquals("Different data", data, Files.readAllBytes(output));
+
+            // The mode state must continue the chain after the pipeline
+            byte[] next = new byte[8];
+            mode[0].crypt(next);
+            mode[1].crypt(next);
+            assertArrayEquals("Different state", new byte[8], next);
+        }
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void sequential() throws Exception {
+        String key = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+        int chunkSize = 4096;
+        byte[] data = new byte[chunkSize * 10 + 13];
+        new Random(7).nextBytes(data);
+        Path dir = Files.createTempDirectory("pipeline");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        Path output = dir.resolve("output.bin");
+        long outDataLen = (data.length + 7) / 8 * 8;
+
+        // CBC encryption is not parallel: one worker, I/O overlapped
+        OperationMode cbc = new CBC(true, key);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            new ChunkPipeline(cbc, 1, chunkSize).process(in, data.length, out, outDataLen, done -> {
+            });
+        }
+        OperationMode expectedCbc = new CBC(true, key);
+        byte[] expected = Arrays.copyOf(data, (int) outDataLen);
+        expectedCbc.crypt(expected, 0, expected.length);
+
+        assertArrayEquals("Different data", expected, Files.readAllBytes(output));
+        // The mode state continues after the last chunk
+        byte[] next = new byte[8];
+        byte[] expectedNext = new byte[8];
+        cbc.crypt(next);
+        expectedCbc.crypt(expectedNext);
+        assertArrayEquals("Different state", expectedNext, next);
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(dir);
+    }
+}
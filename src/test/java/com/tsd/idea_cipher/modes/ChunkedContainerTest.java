@@ -0,0 +1,95 @@
+package com.tsd.idea_cipher.modes;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ChunkedContainerTest {
+
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+    private static final int CHUNK_SIZE = 4096;
+
+    @Test
+    public void cryptFile() throws Exception {
+        Path dir = Files.createTempDirectory("chunked");
+        for (int size : new int[]{0, 5, 4096, 4097, 3 * FileProcessor.BUF_SIZE + 13}) {
+            byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            Path input = Files.write(dir.resolve("input.bin"), data);
+
+            // Parallel encryption, then parallel and sequential decryption
+            crypt(input, dir.resolve("encrypted.bin"), true, 4);
+            assertTrue("Not a container", isContainer(dir.resolve("encrypted.bin")));
+            crypt(dir.resolve("encrypted.bin"), dir.resolve("parallel.bin"), false, 4);
+            crypt(dir.resolve("encrypted.bin"), dir.resolve("sequential.bin"), false, 1);
+            assertArrayEquals("Different data (" + size + ")", data, Files.readAllBytes(dir.resolve("parallel.bin")));
+            assertArrayEquals("Different data (" + size + ")", data,
+                    Files.readAllBytes(dir.resolve("sequential.bin")));
+
+            // Sequential encryption, even with a zero map threshold, is readable by the parallel decryption
+            crypt(input, dir.resolve("encrypted.bin"), true, 1);
+            crypt(dir.resolve("encrypted.bin"), dir.resolve("parallel.bin"), false, 4);
+            assertArrayEquals("Different data (" + size + ")", data, Files.readAllBytes(dir.resolve("parallel.bin")));
+        }
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void readChunk() throws Exception {
+        Path dir = Files.createTempDirectory("chunked");
+        byte[] data = new byte[10 * CHUNK_SIZE + 100];
+        new Random(3).nextBytes(data);
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        crypt(input, dir.resolve("encrypted.bin"), true, 2);
+
+        // Any chunk is located and decrypted on its own
+        try (FileChannel channel = FileChannel.open(dir.resolve("encrypted.bin"), StandardOpenOption.READ)) {
+            ChunkedContainer container = ChunkedContainer.read(channel, KEY, null);
+            assertEquals("Wrong chunk count", 11, container.getChunkCount());
+            assertEquals("Wrong data length", data.length, container.getDataLength());
+            for (int i : new int[]{7, 0, 10}) {
+                assertArrayEquals("Different chunk " + i,
+                        Arrays.copyOfRange(data, i * CHUNK_SIZE, Math.min(data.length, (i + 1) * CHUNK_SIZE)),
+                        container.readChunk(channel, i, KEY, null));
+            }
+        }
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongKey() throws Exception {
+        Path dir = Files.createTempDirectory("chunked");
+        try {
+            Path input = Files.write(dir.resolve("input.bin"), new byte[1000]);
+            crypt(input, dir.resolve("encrypted.bin"), true, 1);
+            new FileProcessor(dir.resolve("encrypted.bin").toString(), dir.resolve("out.bin").toString(),
+                    "another key", false, OperationMode.Mode.CBC).cryptFile();
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    private static void crypt(Path input, Path output, boolean encrypt, int threads) throws IOException {
+        FileProcessor processor = new FileProcessor(input.toString(), output.toString(), KEY, encrypt,
+                OperationMode.Mode.CBC);
+        processor.setThreads(threads);
+        processor.setMapThreshold(threads == 1 ? 0 : Long.MAX_VALUE);
+        processor.setChunkSize(CHUNK_SIZE);
+        processor.cryptFile();
+    }
+
+    private static boolean isContainer(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return ChunkedContainer.isContainer(channel);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.tsd.idea_cipher.modes;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressionStageTest {
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Test
+    public void roundTrip() throws Exception {
+        // Log-like data, larger than one buffer
+        StringBuilder log = new StringBuilder();
+        Random random = new Random(5);
+        while (log.length() < 5 * FileProcessor.BUF_SIZE) {
+            log.append("2024-01-01 12:00:").append(random.nextInt(60)).append(" INFO request ")
+                    .append(random.nextInt(1000)).append(" done\n");
+        }
+        byte[] data = log.toString().getBytes(StandardCharsets.US_ASCII);
+        Path dir = Files.createTempDirectory("compression");
+        Path input = Files.write(dir.resolve("input.log"), data);
+        Path empty = Files.write(dir.resolve("empty.log"), new byte[0]);
+        Path output = dir.resolve("output.cif");
+        Path decrypted = dir.resolve("output.dec");
+        for (OperationMode.Mode mode : OperationMode.Mode.values()) {
+            for (Path in : new Path[]{input, empty}) {
+                byte[] expected = Files.readAllBytes(in);
+                FileProcessor processor = new FileProcessor(in.toString(), output.toString(), KEY, true, mode);
+                processor.setCompressionLevel(6);
+                processor.cryptFile();
+                if (in == input) {
+                    assertTrue(mode + ": not compressed", Files.size(output) < data.length / 4);
+                }
+                new FileProcessor(output.toString(), decrypted.toString(), KEY, false, mode).cryptFile();
+                assertArrayEquals(mode + ": different data", expected, Files.readAllBytes(decrypted));
+            }
+        }
+        Files.delete(input);
+        Files.delete(empty);
+        Files.delete(output);
+        Files.delete(decrypted);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void wrongKey() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(9).nextBytes(data);
+        Path dir = Files.createTempDirectory("compression");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        Path output = dir.resolve("output.cif");
+        Path decrypted = dir.resolve("output.dec");
+        for (OperationMode.Mode mode : new OperationMode.Mode[]{OperationMode.Mode.CBC, OperationMode.Mode.CTR_PMAC}) {
+            FileProcessor processor = new FileProcessor(input.toString(), output.toString(), KEY, true, mode);
+            processor.setCompressionLevel(1);
+            processor.cryptFile();
+            try {
+                new FileProcessor(output.toString(), decrypted.toString(), "other key", false, mode).cryptFile();
+                fail(mode + ": wrong key accepted");
+            } catch (IOException expected) {
+                assertEquals(mode + ": output not truncated", 0, Files.size(decrypted));
+            }
+        }
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(decrypted);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void tamperedBeforeInflate() throws Exception {
+        // Incompressible data, so the decompression would write several buffers before the end of the input
+        byte[] data = new byte[3 * FileProcessor.BUF_SIZE];
+        new Random(11).nextBytes(data);
+        Path dir = Files.createTempDirectory("compression");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        Path output = dir.resolve("output.cif");
+        Path decrypted = dir.resolve("output.dec");
+        FileProcessor processor = new FileProcessor(input.toString(), output.toString(), KEY, true,
+                OperationMode.Mode.CTR_PMAC);
+        processor.setCompressionLevel(1);
+        processor.cryptFile();
+        byte[] encrypted = Files.readAllBytes(output);
+        encrypted[encrypted.length / 2] ^= 4;
+        Files.write(output, encrypted);
+
+        // No plaintext is written while the tag is unchecked
+        FileProcessor decrypt = new FileProcessor(output.toString(), decrypted.toString(), KEY, false,
+                OperationMode.Mode.CTR_PMAC);
+        decrypt.setListener(new FileProcessor.Listener() {
+            @Override
+            public void progress(long workDone, long max) {
+                try {
+                    assertEquals("Unauthenticated plaintext written", 0, Files.size(decrypted));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        try {
+            decrypt.cryptFile();
+            fail("Modified file decrypted");
+        } catch (IOException expected) {
+            assertEquals("Output not empty", 0, Files.size(decrypted));
+        }
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(decrypted);
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,105 @@
+package com.tsd.idea_cipher.modes;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class InPlaceJournalTest {
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+    private static final int CHUNK = 0x800000;
+
+    @Test
+    public void resume() throws Exception {
+        byte[] data = new byte[2 * CHUNK + 1000 + 3];
+        new Random(7).nextBytes(data);
+        Path dir = Files.createTempDirectory("inplace");
+        Path file = Files.write(dir.resolve("data.bin"), data);
+        Path expected = dir.resolve("expected.cif");
+        new FileProcessor(file.toString(), expected.toString(), KEY, true, OperationMode.Mode.CBC).cryptFile();
+
+        // Interrupted while the second chunk is written: the chunk is half overwritten
+        FileProcessor processor = processor(file, true);
+        processor.setListener(new FileProcessor.Listener() {
+            @Override
+            public void progress(long workDone, long max) {
+                if (workDone >= 2 * CHUNK) {
+                    throw new IllegalStateException("Crash");
+                }
+            }
+        });
+        try {
+            processor.cryptFile();
+            fail("Not interrupted");
+        } catch (IllegalStateException expectedCrash) {
+            Path journal = Paths.get(file + InPlaceJournal.EXT);
+            assertTrue(Files.exists(journal));
+            // The undo copy of the second chunk is plaintext: it must not be in the journal as is
+            byte[] undo = Arrays.copyOfRange(data, CHUNK, CHUNK + 64);
+            assertFalse("Plaintext in the journal", contains(Files.readAllBytes(journal), undo));
+        }
+        try (RandomAccessFile f = new RandomAccessFile(file.toFile(), "rw")) {
+            f.seek(CHUNK + 100);
+            f.write(new byte[5000]);
+        }
+
+        processor(file, true).cryptFile();
+        assertArrayEquals("Different cryptogram", Files.readAllBytes(expected), Files.readAllBytes(file));
+        assertFalse(Files.exists(Paths.get(file + InPlaceJournal.EXT)));
+
+        processor(file, false).cryptFile();
+        assertArrayEquals("Different data", data, Files.readAllBytes(file));
+        Files.delete(expected);
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void wrongKey() throws Exception {
+        byte[] data = new byte[10000];
+        new Random(3).nextBytes(data);
+        Path dir = Files.createTempDirectory("inplace");
+        Path file = Files.write(dir.resolve("data.bin"), data);
+        processor(file, true).cryptFile();
+        byte[] encrypted = Files.readAllBytes(file);
+
+        // The key is checked before the file is modified
+        FileProcessor processor = new FileProcessor(file.toString(), null, "other key", false,
+                OperationMode.Mode.CBC);
+        processor.setInPlace(true);
+        try {
+            processor.cryptFile();
+            fail("Wrong key not detected");
+        } catch (IOException expectedError) {
+            assertArrayEquals("File modified", encrypted, Files.readAllBytes(file));
+        }
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    private static boolean contains(byte[] data, byte[] part) {
+        search:
+        for (int i = 0; i + part.length <= data.length; i++) {
+            for (int j = 0; j < part.length; j++) {
+                if (data[i + j] != part[j]) {
+                    continue search;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static FileProcessor processor(Path file, boolean encrypt) {
+        FileProcessor processor = new FileProcessor(file.toString(), null, KEY, encrypt, OperationMode.Mode.CBC);
+        processor.setInPlace(true);
+        return processor;
+    }
+}
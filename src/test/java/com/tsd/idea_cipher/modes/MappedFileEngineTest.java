@@ -0,0 +1,45 @@
+package com.tsd.idea_cipher.modes;
+
+import com.tsd.idea_cipher.modes.algorithms.CBC;
+import org.junit.Test;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MappedFileEngineTest {
+    @Test
+    public void process() throws Exception {
+        String key = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+        int windowSize = 4096;
+        byte[] data = new byte[windowSize * 5 + 13];
+        new Random(11).nextBytes(data);
+        Path dir = Files.createTempDirectory("mapped");
+        Path input = Files.write(dir.resolve("input.bin"), data);
+        Path output = dir.resolve("output.bin");
+        long outDataLen = (data.length + 7) / 8 * 8;
+
+        // Several windows, slices smaller than a window, last block incomplete
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            new MappedFileEngine(new CBC(true, key), windowSize, 1024).process(in, data.length, out, outDataLen,
+                    done -> {
+                    });
+            assertEquals("Wrong input position", data.length, in.position());
+            assertEquals("Wrong output position", outDataLen, out.position());
+        }
+        byte[] expected = Arrays.copyOf(data, (int) outDataLen);
+        new CBC(true, key).crypt(expected, 0, expected.length);
+
+        assertArrayEquals("Different data", expected, Files.readAllBytes(output));
+        Files.delete(input);
+        Files.delete(output);
+        Files.delete(dir);
+    }
+}
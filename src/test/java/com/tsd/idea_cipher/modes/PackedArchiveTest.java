@@ -0,0 +1,84 @@
+package com.tsd.idea_cipher.modes;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PackedArchiveTest {
+    private static final String KEY = "6FY0@7j@N'f4UQy9Bv\",+D)g@>QRRQ";
+
+    @Test
+    public void members() throws Exception {
+        Path dir = Files.createTempDirectory("archive");
+        Path archive = dir.resolve("files.pak");
+        byte[][] data = new byte[300][];
+        Random random = new Random(11);
+        try (PackedArchive.Writer writer = new PackedArchive.Writer(archive, KEY, null)) {
+            for (int i = 0; i < data.length; i++) {
+                // Small files of any length, one empty and one larger than the buffer
+                data[i] = new byte[i == 7 ? 0 : i == 100 ? 600000 + 3 : random.nextInt(3000)];
+                random.nextBytes(data[i]);
+                writer.add("dir/file" + i, new ByteArrayInputStream(data[i]));
+            }
+        }
+
+        try (PackedArchive.Reader reader = new PackedArchive.Reader(archive, KEY, null)) {
+            List<PackedArchive.Entry> entries = reader.getEntries();
+            assertEquals("Wrong member count", data.length, entries.size());
+            assertEquals("Wrong order", "dir/file42", entries.get(42).getName());
+            // Any member, in any order
+            for (int i : new int[]{100, 7, 299, 0, 42}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                reader.extract("dir/file" + i, out);
+                assertArrayEquals("Different member " + i, data[i], out.toByteArray());
+            }
+            try {
+                reader.extract("missing", new ByteArrayOutputStream());
+                fail("Missing member extracted");
+            } catch (IOException expected) {
+                // No such member
+            }
+        }
+
+        try {
+            new PackedArchive.Reader(archive, "other key", null).close();
+            fail("Wrong key accepted");
+        } catch (IOException expected) {
+            // The index is checked when the archive is opened
+        }
+        Files.delete(archive);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void damagedMember() throws Exception {
+        Path dir = Files.createTempDirectory("archive");
+        Path archive = dir.resolve("files.pak");
+        try (PackedArchive.Writer writer = new PackedArchive.Writer(archive, KEY, null)) {
+            writer.add("a", new ByteArrayInputStream(new byte[100]));
+            writer.add("b", new ByteArrayInputStream(new byte[100]));
+        }
+        byte[] b = Files.readAllBytes(archive);
+        b[PackedArchive.HEADER_SIZE + 5] ^= 1; // In member a
+        Files.write(archive, b);
+        try (PackedArchive.Reader reader = new PackedArchive.Reader(archive, KEY, null)) {
+            reader.extract("b", new ByteArrayOutputStream());
+            try {
+                reader.extract("a", new ByteArrayOutputStream());
+                fail("Damaged member extracted");
+            } catch (IOException expected) {
+                // CRC mismatch
+            }
+        }
+        Files.delete(archive);
+        Files.delete(dir);
+    }
+}